@@ -0,0 +1,338 @@
+package bank;
+
+import bank.user.TransactionColumns;
+import bank.user.Users;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Totals over the rows of a {@link Search.Query}: count, sum, min, max and average of a numeric
+ * field, overall or per value of a group field. One pass, no rows are collected, and the
+ * figures are kept in primitive accumulators. Balances and amounts are summed in cents, exactly.
+ * <pre>
+ *     Aggregation.over(Search.ACCOUNTS.all()).groupBy("type").of("balance").run()
+ *     Aggregation.over(Search.TRANSACTIONS.where("amount", "&gt;", 0)).groupBy("date").of("amount").run()
+ * </pre>
+ * Over transactions the pass reads {@link Users#transactionColumns()}, taking the value and the
+ * group from their columns. {@link #parallel()} splits the user list, or the columns by chunk,
+ * over a ForkJoin pool like {@link Search.Query#runParallel()}; groups keep the order in which a
+ * sequential pass meets them, and the figures are the same as a sequential pass's.
+ *
+ * @param <T> the row type of the query's entity
+ */
+public final class Aggregation<T> {
+
+    /**
+     * Figures of one group; min and max are 0 for a group without rows.
+     *
+     * @param money true if sum, min and max are cents of a balance or an amount
+     */
+    public record Summary(long count, long sum, long min, long max, boolean money) {
+
+        /** The average; in cents for money, not rounded to a whole cent. NaN without rows. */
+        public double average() {
+            return count == 0 ? Double.NaN : (double) sum / count;
+        }
+
+        /** A figure of this summary as text: money as {@link Money#format(long) units and cents}. */
+        public String format(long figure) {
+            return money ? Money.format(figure) : Long.toString(figure);
+        }
+
+        @Override
+        public String toString() {
+            return "Summary[count=" + count + ", sum=" + format(sum) + ", min=" + format(min) + ", max=" + format(max) + "]";
+        }
+    }
+
+    private final Search.Query<T> query;
+    private Search.Field<T> group;
+    private ToLongFunction<T> value;
+    // Null if the field has no column
+    private Search.LongColumn valueColumn;
+    private boolean money;
+    private ForkJoinPool pool;
+
+    private Aggregation(Search.Query<T> query) {
+        this.query = query;
+    }
+
+    public static <T> Aggregation<T> over(Search.Query<T> query) {
+        return new Aggregation<>(query);
+    }
+
+    /** One summary per distinct value of the field; a balance or an amount is keyed by its cents. */
+    public Aggregation<T> groupBy(String field) {
+        group = query.entity().field(field);
+        return this;
+    }
+
+    /**
+     * The numeric field to sum, average and bound; without it only rows are counted.
+     *
+     * @throws IllegalArgumentException for a text field
+     */
+    public Aggregation<T> of(String field) {
+        Search.Field<T> f = query.entity().field(field);
+        value = switch (f) {
+            case Search.LongField<T> l -> l.get();
+            case Search.MoneyField<T> m -> m.cents();
+            case Search.TextField<T> t -> throw new IllegalArgumentException(field + " is not a number");
+        };
+        valueColumn = switch (f) {
+            case Search.LongField<T> l -> l.column();
+            case Search.MoneyField<T> m -> m.column();
+            case Search.TextField<T> t -> null;
+        };
+        money = f instanceof Search.MoneyField<T>;
+        return this;
+    }
+
+    /** Run on the common ForkJoin pool. */
+    public Aggregation<T> parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    public Aggregation<T> parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * @return a summary per group, in the order the groups first occur; without
+     *         {@link #groupBy} a single group keyed by null
+     */
+    public Map<Object, Summary> run() {
+        Groups groups;
+        if (query.columnar()) {
+            TransactionColumns columns = Users.transactionColumns();
+            groups = pool == null
+                    ? new ChunkPart(columns, 0, columns.chunkCount()).compute()
+                    : pool.invoke(new ChunkPart(columns, 0, columns.chunkCount()));
+        } else if (pool == null || query.indexed()) {
+            groups = new Groups();
+            query.forEach(groups::add);
+        } else {
+            UserSpliterator users = UserSpliterator.of(Users.snapshot().users(), query.entity().weight());
+            long leafWeight = Math.max(1, users.weight() / (4L * pool.getParallelism()));
+            groups = pool.invoke(new Part(users, leafWeight));
+        }
+        Map<Object, Summary> out = new LinkedHashMap<>();
+        for (Map.Entry<Object, Acc> e : groups.map.entrySet()) {
+            out.put(e.getKey(), e.getValue().summary(money));
+        }
+        return out;
+    }
+
+    /** All matching rows as one group, whatever {@link #groupBy} says. */
+    public Summary total() {
+        Search.Field<T> grouped = group;
+        group = null;
+        try {
+            Summary s = run().get(null);
+            return s != null ? s : new Summary(0, 0, 0, 0, money);
+        } finally {
+            group = grouped;
+        }
+    }
+
+    private static final class Acc {
+        long count;
+        long sum;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        void add(long v) {
+            count++;
+            sum = Math.addExact(sum, v);
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+
+        void merge(Acc o) {
+            count += o.count;
+            sum = Math.addExact(sum, o.sum);
+            min = Math.min(min, o.min);
+            max = Math.max(max, o.max);
+        }
+
+        Summary summary(boolean money) {
+            return count == 0 ? new Summary(0, 0, 0, 0, money) : new Summary(count, sum, min, max, money);
+        }
+    }
+
+    /**
+     * Accumulators by group key. Rows of a group tend to come in runs (one account's history,
+     * one day), so the accumulator of the previous row is tried before the map, which also
+     * avoids boxing a long key for every row.
+     */
+    private final class Groups {
+
+        final Map<Object, Acc> map = new LinkedHashMap<>();
+        private Acc last;
+        private long lastLong;
+        private String lastText;
+        private int lastId;
+
+        void add(T row) {
+            Acc acc = accFor(row);
+            acc.add(value == null ? 0 : value.applyAsLong(row));
+        }
+
+        /** {@link #add(Object)} for a row of the columns, reading the record only for a field without a column. */
+        void add(TransactionColumns.Chunk chunk, int r) {
+            Acc acc = accFor(chunk, r);
+            if (value == null) {
+                acc.add(0);
+            } else if (valueColumn != null) {
+                acc.add(valueColumn.get(chunk, r));
+            } else {
+                acc.add(value.applyAsLong(query.entity().row(chunk, r)));
+            }
+        }
+
+        private Acc accFor(TransactionColumns.Chunk chunk, int r) {
+            Search.LongColumn longs = switch (group) {
+                case Search.LongField<T> l -> l.column();
+                case Search.MoneyField<T> m -> m.column();
+                case null, default -> null;
+            };
+            if (longs != null) {
+                long k = longs.get(chunk, r);
+                if (last == null || k != lastLong) {
+                    last = map.computeIfAbsent(k, x -> new Acc());
+                    lastLong = k;
+                }
+                return last;
+            }
+            if (group instanceof Search.TextField<T> t && t.column() != null) {
+                // Look the text up only when the id changes
+                int k = t.column().get(chunk, r);
+                if (last == null || k != lastId) {
+                    last = map.computeIfAbsent(TransactionColumns.string(k), x -> new Acc());
+                    lastId = k;
+                }
+                return last;
+            }
+            return group == null ? accFor(null) : accFor(query.entity().row(chunk, r));
+        }
+
+        private Acc accFor(T row) {
+            switch (group) {
+                case null -> {
+                    if (last == null) {
+                        last = map.computeIfAbsent(null, k -> new Acc());
+                    }
+                }
+                case Search.LongField<T> l -> {
+                    long k = l.get().applyAsLong(row);
+                    if (last == null || k != lastLong) {
+                        last = map.computeIfAbsent(k, x -> new Acc());
+                        lastLong = k;
+                    }
+                }
+                case Search.MoneyField<T> m -> {
+                    long k = m.cents().applyAsLong(row);
+                    if (last == null || k != lastLong) {
+                        last = map.computeIfAbsent(k, x -> new Acc());
+                        lastLong = k;
+                    }
+                }
+                case Search.TextField<T> t -> {
+                    Function<T, String> get = t.get();
+                    String k = get.apply(row);
+                    if (last == null || !Objects.equals(k, lastText)) {
+                        last = map.computeIfAbsent(k, x -> new Acc());
+                        lastText = k;
+                    }
+                }
+            }
+            return last;
+        }
+
+        /** Fold in the groups of the part to the right. */
+        void merge(Groups right) {
+            for (Map.Entry<Object, Acc> e : right.map.entrySet()) {
+                Acc acc = map.get(e.getKey());
+                if (acc == null) {
+                    map.put(e.getKey(), e.getValue());
+                } else {
+                    acc.merge(e.getValue());
+                }
+            }
+            last = null;
+        }
+    }
+
+    private final class Part extends RecursiveTask<Groups> {
+
+        private final UserSpliterator users;
+        private final long leafWeight;
+
+        Part(UserSpliterator users, long leafWeight) {
+            this.users = users;
+            this.leafWeight = leafWeight;
+        }
+
+        @Override
+        protected Groups compute() {
+            if (users.weight() > leafWeight) {
+                UserSpliterator left = users.trySplit();
+                if (left != null) {
+                    Part first = new Part(left, leafWeight);
+                    first.fork();
+                    Groups second = compute();
+                    Groups out = first.join();
+                    out.merge(second);
+                    return out;
+                }
+            }
+            Groups groups = new Groups();
+            users.forEachRemaining(u -> query.forEachOf(u, groups::add));
+            return groups;
+        }
+    }
+
+    /** Chunks {@code [from, to)} of the columns; one chunk is the smallest part. */
+    private final class ChunkPart extends RecursiveTask<Groups> {
+
+        private final TransactionColumns columns;
+        private final int from;
+        private final int to;
+
+        ChunkPart(TransactionColumns columns, int from, int to) {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Groups compute() {
+            if (pool != null && to - from > 1) {
+                int mid = (from + to) >>> 1;
+                ChunkPart first = new ChunkPart(columns, from, mid);
+                first.fork();
+                Groups second = new ChunkPart(columns, mid, to).compute();
+                Groups out = first.join();
+                out.merge(second);
+                return out;
+            }
+            Groups groups = new Groups();
+            for (int i = from; i < to; i++) {
+                TransactionColumns.Chunk chunk = columns.chunk(i);
+                query.forEachIn(chunk, r -> groups.add(chunk, r));
+            }
+            return groups;
+        }
+    }
+}
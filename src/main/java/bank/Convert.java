@@ -19,19 +19,16 @@ public class Convert {
         return String.format("%04d-%02d-%02d", y, m, d);
     }
 
+    /** Cents in an amount like {@code 12.34}; see {@link Money#parse(CharSequence)}. */
     public static long balance(String balance) 
     {
-        String[] num = balance.split("\\.");
-        long d = Long.parseLong(num[0]);
-        long c = Long.parseLong(num[1]);
-        return 100 * d + c;
+        return Money.parse(balance);
     }
 
+    /** Cents as {@code 12.34}; see {@link Money#format(long)}. */
     public static String balance(long balance) 
     {
-        long d = balance / 100;
-        long c = balance % 100;
-        return String.format("%d.%02d", d, c);
+        return Money.format(balance);
     }
 
     public static String initials(String name) 
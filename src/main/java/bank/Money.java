@@ -0,0 +1,168 @@
+package bank;
+
+/**
+ * Money as a {@code long} number of cents. Sums and differences are exact and throw
+ * {@link ArithmeticException} instead of wrapping around, and nothing on the way allocates: no
+ * {@code BigDecimal}, no boxing.
+ * <p>
+ * The ledger records hold cents; amounts become decimals only where they are written as JSON
+ * ({@link #format(long)}) or shown. {@link #amount(long)} gives the double closest to a number of
+ * cents, and {@link #cents(double)} turns such a double back into the same number of cents while
+ * the amount is below 2<sup>51</sup> cents (about 22 trillion). Past that neighbouring cents
+ * round to the same double, which is why nothing is stored as one.
+ */
+public final class Money {
+
+    // Largest amount whose cents fit in a long, with room to spare for rounding
+    private static final double LIMIT = 9.0e16;
+
+    private Money() {}
+
+    /**
+     * The amount rounded to the nearest cent.
+     *
+     * @throws ArithmeticException if the amount is not a number or doesn't fit
+     */
+    public static long cents(double amount) {
+        if (!(Math.abs(amount) < LIMIT)) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+        return Math.round(amount * 100);
+    }
+
+    /** The double closest to this many cents, e.g. {@code 0.29} for 29. */
+    public static double amount(long cents) {
+        return cents / 100.0;
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    public static long negate(long cents) {
+        return Math.negateExact(cents);
+    }
+
+    /** {@code cents} times a whole number, e.g. a price times a quantity. */
+    public static long multiply(long cents, long times) {
+        return Math.multiplyExact(cents, times);
+    }
+
+    /**
+     * Append the amount as {@code -1234.56}: an optional minus sign, the units and always two
+     * decimals, no grouping.
+     */
+    public static StringBuilder format(long cents, StringBuilder out) {
+        // Negative arithmetic, so Long.MIN_VALUE needs no special case
+        long n = cents < 0 ? cents : -cents;
+        if (cents < 0) {
+            out.append('-');
+        }
+        long units = -(n / 100);
+        int fraction = (int) -(n % 100);
+        return out.append(units).append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+
+    public static String format(long cents) {
+        return format(cents, new StringBuilder(24)).toString();
+    }
+
+    /** See {@link #parse(CharSequence, int, int)}. */
+    public static long parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    /**
+     * Read an amount from {@code s[start, end)}: an optional sign, an optional {@code $}, the
+     * units, and up to two decimals; surrounding spaces are ignored. The units may be grouped by
+     * thousands with {@code ,}: one to three digits, then groups of exactly three. {@code 12},
+     * {@code 12.5}, {@code -0.05} and {@code $1,234.56} are all amounts; {@code 1,2} and
+     * {@code 12,34,5} are not.
+     *
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not an amount or doesn't fit
+     */
+    public static long parse(CharSequence s, int start, int end) {
+        int i = start;
+        while (i < end && s.charAt(i) == ' ') {
+            i++;
+        }
+        while (end > i && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        if (i < end && s.charAt(i) == '$') {
+            i++;
+        }
+        // Accumulate negatively: the negative range is one larger
+        long units = 0;
+        int digits = 0;
+        // Digits since the last ',', or -1 before the first one
+        int group = -1;
+        try {
+            for (; i < end && s.charAt(i) != '.'; i++) {
+                char c = s.charAt(i);
+                if (c == ',') {
+                    if (group == -1 ? digits == 0 || digits > 3 : group != 3) {
+                        throw notAnAmount(s, start, end);
+                    }
+                    group = 0;
+                    continue;
+                }
+                if (!isDigit(c)) {
+                    throw notAnAmount(s, start, end);
+                }
+                units = Math.subtractExact(Math.multiplyExact(units, 10), c - '0');
+                digits++;
+                if (group >= 0) {
+                    group++;
+                }
+            }
+            if (group != -1 && group != 3) {
+                throw notAnAmount(s, start, end);
+            }
+            int fraction = 0;
+            int decimals = 0;
+            if (i < end) {
+                // At the '.'
+                for (i++; i < end; i++) {
+                    char c = s.charAt(i);
+                    if (!isDigit(c) || decimals == 2) {
+                        throw notAnAmount(s, start, end);
+                    }
+                    fraction = fraction * 10 + (c - '0');
+                    decimals++;
+                }
+                if (decimals == 0 && digits == 0) {
+                    throw notAnAmount(s, start, end);
+                }
+            }
+            if (digits == 0 && decimals == 0) {
+                throw notAnAmount(s, start, end);
+            }
+            if (decimals == 1) {
+                fraction *= 10;
+            }
+            long cents = Math.subtractExact(Math.multiplyExact(units, 100), fraction);
+            return negative ? cents : Math.negateExact(cents);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + s.subSequence(start, end));
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException notAnAmount(CharSequence s, int start, int end) {
+        return new NumberFormatException("Not an amount: \"" + s.subSequence(start, end) + "\"");
+    }
+}
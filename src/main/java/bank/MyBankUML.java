@@ -1,5 +1,6 @@
 package bank; 
 
+import bank.user.Users;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -37,7 +38,15 @@ public class MyBankUML extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
     }
+    @Override
+    public void stop() {
+        // Don't lose snapshot writes still waiting in the group commit window
+        Users.flush();
+    }
+
     public static void main(String[] args) {
+        // Ledger postings go to the journal; full rewrites only happen on checkpoints
+        Users.setJournaled(true);
         launch(args);
     }
 }
\ No newline at end of file
@@ -1,87 +1,836 @@
 package bank;
 
+import bank.user.TransactionColumns;
 import bank.user.Users;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
+/**
+ * Search over users, accounts and transactions.
+ * <p>
+ * A condition such as {@code transactions.amount > 100} is compiled once into a {@link Query}:
+ * the entity, field and operator are resolved and the value converted when compiling, so a scan
+ * only calls a primitive getter and compares. Balances and amounts compare in cents. Queries on the same entity combine with
+ * {@link Query#and} and {@link Query#or}.
+ * <p>
+ * A query bounded by {@code <, <=, =, >=, >} on an indexed field (account balance, transaction
+ * date and amount) reads the range from the sorted index in {@link Users} and only tests the
+ * rows inside it, instead of scanning everything. It returns the rows in storage order all the
+ * same, from the snapshot the index was read at.
+ * <p>
+ * A scan of transactions reads {@link Users#transactionColumns()}: a condition on the date, the
+ * amount, the recipient id, or equality on an account or the recipient name compares primitive
+ * columns, and only the records of matching rows are touched. Other conditions test the record
+ * of every row.
+ * <p>
+ * {@link Query#runParallel()} scans on a ForkJoin pool, splitting the user list by the number
+ * of rows each user holds, or the transaction columns by chunk, and returns the same list as
+ * {@link Query#run()}. A {@link SearchCursor} hands out the same rows lazily, in pages that can
+ * be resumed from a token.
+ */
 public class Search {
 
-    public static List<Object> all(String things, String field, String condition, Object value) {
-        List<Object> out = new ArrayList<>();
+    public enum Op {
+        LT("<"), LE("<="), EQ("="), GE(">="), GT(">"), NE("!="), PREFIX("prefix"), CONTAINS("contains");
+
+        private final String symbol;
+
+        Op(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String symbol() {
+            return symbol;
+        }
 
-        if (things.equals("users")) {
-            for (Users.User u : Users.get()) {
-                if (match(get_field(u, field), condition, value)) out.add(u);
+        public static Op of(String symbol) {
+            for (Op op : values()) {
+                if (op.symbol.equals(symbol)) {
+                    return op;
+                }
             }
-            return out;
+            throw new IllegalArgumentException("Unknown operator: " + symbol);
+        }
+    }
+
+    sealed interface Field<T> {}
+
+    /** Reads a number of one row of a {@link TransactionColumns.Chunk}. */
+    interface LongColumn {
+        long get(TransactionColumns.Chunk chunk, int row);
+    }
+
+    /** Reads the dictionary id of a text of one row of a {@link TransactionColumns.Chunk}. */
+    interface IdColumn {
+        int get(TransactionColumns.Chunk chunk, int row);
+    }
+
+    /** Reads the row itself. */
+    interface ChunkRows<T> {
+        T get(TransactionColumns.Chunk chunk, int row);
+    }
+
+    /** A compiled condition on one row of a {@link TransactionColumns.Chunk}. */
+    interface RowTest {
+        boolean test(TransactionColumns.Chunk chunk, int row);
+    }
+
+    /** @param column null if the entity has no column for the field */
+    record LongField<T>(ToLongFunction<T> get, LongColumn column) implements Field<T> {
+        LongField(ToLongFunction<T> get) {
+            this(get, null);
+        }
+    }
+
+    /** A balance or an amount, read and compared in cents. */
+    record MoneyField<T>(ToLongFunction<T> cents, LongColumn column) implements Field<T> {
+        MoneyField(ToLongFunction<T> cents) {
+            this(cents, null);
+        }
+    }
+
+    record TextField<T>(Function<T, String> get, IdColumn column) implements Field<T> {
+        TextField(Function<T, String> get) {
+            this(get, null);
+        }
+    }
+
+    /**
+     * Bounds on one indexed field, which holds whole numbers (a date, cents). The compiled
+     * predicate is still applied to the rows found, so a lookup may return a wider range than
+     * asked for.
+     */
+    private record Range(String field, long from, boolean fromInclusive, long to, boolean toInclusive) {
+
+        static Range of(String field, Op op, long v) {
+            return switch (op) {
+                case LT -> new Range(field, Long.MIN_VALUE, true, v, false);
+                case LE -> new Range(field, Long.MIN_VALUE, true, v, true);
+                case EQ -> new Range(field, v, true, v, true);
+                case GE -> new Range(field, v, true, Long.MAX_VALUE, true);
+                case GT -> new Range(field, v, false, Long.MAX_VALUE, true);
+                default -> null;
+            };
+        }
+
+        /** Bounds for a whole-number field compared with {@code v}; a fraction widens to the whole numbers around it. */
+        static Range around(String field, Op op, double v) {
+            if (v == Math.rint(v)) {
+                return of(field, op, (long) v);
+            }
+            return switch (op) {
+                case LT, LE -> of(field, Op.LE, ceil(v));
+                case GE, GT -> of(field, Op.GE, floor(v));
+                case EQ -> new Range(field, floor(v), true, ceil(v), true);
+                default -> null;
+            };
+        }
+
+        /** Both ranges must hold; null if they are on different fields. */
+        Range intersect(Range o) {
+            if (!field.equals(o.field)) {
+                return null;
+            }
+            int low = Long.compare(from, o.from);
+            int high = Long.compare(to, o.to);
+            return new Range(field,
+                    low > 0 ? from : o.from, low > 0 ? fromInclusive : low < 0 ? o.fromInclusive : fromInclusive && o.fromInclusive,
+                    high < 0 ? to : o.to, high < 0 ? toInclusive : high > 0 ? o.toInclusive : toInclusive && o.toInclusive);
+        }
+    }
+
+    private interface RangeLookup<T> {
+        Users.Lookup<T> find(Range range);
+    }
+
+    /**
+     * Something that can be searched: its fields by name, and how to walk all of its rows.
+     */
+    public static final class Entity<T> {
+
+        private final String name;
+        private final Map<String, Field<T>> fields;
+        private final BiConsumer<Users.User, Consumer<T>> rows;
+        private final ToLongFunction<Users.User> weight;
+        private final Map<String, RangeLookup<T>> indexes;
+        private final BiConsumer<Users.Account, Consumer<T>> accountRows;
+        private final Function<T, List<String>> holders;
+        private final int depth;
+        private final LongSupplier version;
+        private final ChunkRows<T> chunkRows;
+
+        /**
+         * @param rows        feeds the rows of one user to a consumer, in storage order
+         * @param weight      how much scanning one user's rows costs, for splitting parallel scans
+         * @param accountRows feeds the rows one account holds, for putting index hits in storage order
+         * @param holders     numbers of the accounts that may hold a row; null without indexes
+         * @param depth       0 for users, 1 for accounts, 2 for transactions
+         * @param version     changes whenever a row of this entity may have changed
+         * @param chunkRows   the row of a chunk of {@link TransactionColumns}; null if scans don't read them
+         */
+        private Entity(String name, Map<String, Field<T>> fields, BiConsumer<Users.User, Consumer<T>> rows,
+                       ToLongFunction<Users.User> weight, Map<String, RangeLookup<T>> indexes,
+                       BiConsumer<Users.Account, Consumer<T>> accountRows, Function<T, List<String>> holders,
+                       int depth, LongSupplier version, ChunkRows<T> chunkRows) {
+            this.name = name;
+            this.fields = fields;
+            this.rows = rows;
+            this.weight = weight;
+            this.indexes = indexes;
+            this.accountRows = accountRows;
+            this.holders = holders;
+            this.depth = depth;
+            this.version = version;
+            this.chunkRows = chunkRows;
+        }
+
+        public String name() {
+            return name;
         }
 
-        if (things.equals("accounts")) {
-            for (Users.User u : Users.get()) {
-                for (Users.Account a : u.accounts()) {
-                    if (match(get_field(a, field), condition, value)) out.add(a);
+        int depth() {
+            return depth;
+        }
+
+        Field<T> field(String field) {
+            Field<T> f = fields.get(field);
+            if (f == null) {
+                throw new IllegalArgumentException("Unknown field " + name + "." + field);
+            }
+            return f;
+        }
+
+        ToLongFunction<Users.User> weight() {
+            return weight;
+        }
+
+        long version() {
+            return version.getAsLong();
+        }
+
+        T row(TransactionColumns.Chunk chunk, int row) {
+            return chunkRows.get(chunk, row);
+        }
+
+        /**
+         * Compile {@code field op value}. Numbers compare as the field's own type: a balance or an
+         * amount in whole cents, so it is never truncated or rounded, and it also takes a
+         * {@link Money#parse money string} such as {@code "$1,234.50"}; a date field also takes a
+         * {@code yyyy-mm-dd} string.
+         *
+         * @throws IllegalArgumentException for an unknown field or operator, a value that doesn't
+         *                                  fit the field, or a text operator on a number
+         */
+        public Query<T> where(String field, String op, Object value) {
+            return where(field, Op.of(op), value);
+        }
+
+        public Query<T> where(String field, Op op, Object value) {
+            Field<T> f = fields.get(field);
+            if (f == null) {
+                throw new IllegalArgumentException("Unknown field " + name + "." + field);
+            }
+            String text = name + "." + field + " " + op.symbol() + " " + normalized(f, field, value);
+            Predicate<T> predicate = switch (f) {
+                case LongField<T> l -> compileLong(l.get(), op, numberOf(field, value));
+                case MoneyField<T> m -> compileLong(m.cents(), op, centsOf(field, value));
+                case TextField<T> t -> compileText(t.get(), op, String.valueOf(value));
+            };
+            // Only numeric fields have indexes
+            Range range = !indexes.containsKey(field) ? null : switch (f) {
+                case LongField<T> l -> Range.around(field, op, numberOf(field, value).doubleValue());
+                case MoneyField<T> m -> Range.of(field, op, centsOf(field, value));
+                case TextField<T> t -> null;
+            };
+            RowTest rowTest = null;
+            if (chunkRows != null) {
+                rowTest = switch (f) {
+                    case LongField<T> l -> l.column() == null ? null : compileColumn(l.column(), op, numberOf(field, value));
+                    case MoneyField<T> m -> m.column() == null ? null : compileColumn(m.column(), op, centsOf(field, value));
+                    case TextField<T> t -> t.column() == null ? null : compileIds(t.column(), op, String.valueOf(value));
+                };
+                if (rowTest == null) {
+                    // No column to compare: test the row's record
+                    rowTest = (c, r) -> predicate.test(chunkRows.get(c, r));
                 }
             }
+            return new Query<>(this, predicate, text, range, rowTest);
+        }
+
+        /** Every row, unfiltered. */
+        public Query<T> all() {
+            return new Query<>(this, row -> true, name, null, chunkRows == null ? null : (c, r) -> true);
+        }
+    }
+
+    /**
+     * A compiled condition on one entity. Queries are only made by {@link Entity#where} and
+     * {@link Entity#all()} and by combining those, so the index range always matches the predicate.
+     */
+    public static final class Query<T> {
+
+        private final Entity<T> entity;
+        private final Predicate<T> predicate;
+        private final String text;
+        // Null unless an index can answer the query
+        private final Range range;
+        // Null unless scans read the transaction columns
+        private final RowTest rowTest;
+
+        private Query(Entity<T> entity, Predicate<T> predicate, String text, Range range, RowTest rowTest) {
+            this.entity = entity;
+            this.predicate = predicate;
+            this.text = text;
+            this.range = range;
+            this.rowTest = rowTest;
+        }
+
+        public Entity<T> entity() {
+            return entity;
+        }
+
+        /**
+         * @return normalized form of the condition, the same for conditions that are written
+         *         differently but compile to the same predicate, e.g. {@code 100} and {@code "100.0"}
+         *         on a balance; the key of {@link SearchCache}
+         */
+        public String text() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        public Query<T> and(Query<T> other) {
+            Range both;
+            if (range == null || other.range == null) {
+                both = range != null ? range : other.range;
+            } else {
+                // On different fields, one index narrows and the predicate does the rest
+                Range same = range.intersect(other.range);
+                both = same != null ? same : range;
+            }
+            RowTest a = rowTest, b = other.rowTest;
+            return combine(other, predicate.and(other.predicate), "AND", both,
+                    a == null || b == null ? null : (c, r) -> a.test(c, r) && b.test(c, r));
+        }
+
+        public Query<T> or(Query<T> other) {
+            RowTest a = rowTest, b = other.rowTest;
+            return combine(other, predicate.or(other.predicate), "OR", null,
+                    a == null || b == null ? null : (c, r) -> a.test(c, r) || b.test(c, r));
+        }
+
+        private Query<T> combine(Query<T> other, Predicate<T> combined, String word, Range combinedRange,
+                                 RowTest combinedRows) {
+            if (other.entity != entity) {
+                throw new IllegalArgumentException("Cannot combine " + entity.name() + " with " + other.entity.name());
+            }
+            return new Query<>(entity, combined, "(" + text + " " + word + " " + other.text + ")", combinedRange,
+                    combinedRows);
+        }
+
+        /** True if {@link #run()} reads a range from an index instead of scanning. */
+        public boolean indexed() {
+            return range != null;
+        }
+
+        /** True if a scan reads {@link Users#transactionColumns()} rather than walking the users. */
+        boolean columnar() {
+            return rowTest != null && range == null;
+        }
+
+        public boolean test(T row) {
+            return predicate.test(row);
+        }
+
+        /**
+         * Collect the matching rows in storage order. A scan reads one
+         * {@link Users#snapshot() snapshot} and never waits for or holds up a posting; an indexed
+         * run reads the snapshot the index was read at.
+         */
+        public List<T> run() {
+            List<T> out = new ArrayList<>();
+            forEach(out::add);
             return out;
         }
 
-        if (things.equals("transactions")) {
-            for (Users.User u : Users.get()) {
-                for (Users.Account a : u.accounts()) {
-                    for (Users.Transaction t : a.transactions()) {
-                        if (match(get_field(t, field), condition, value)) out.add(t);
+        /** Feed the matching rows to {@code sink} in the order {@link #run()} lists them. */
+        void forEach(Consumer<T> sink) {
+            if (range != null) {
+                inStorageOrder(entity.indexes.get(range.field()).find(range), sink);
+                return;
+            }
+            if (rowTest != null) {
+                TransactionColumns columns = Users.transactionColumns();
+                for (int i = 0; i < columns.chunkCount(); i++) {
+                    TransactionColumns.Chunk chunk = columns.chunk(i);
+                    forEachIn(chunk, r -> sink.accept(entity.row(chunk, r)));
+                }
+                return;
+            }
+            List<Users.User> users = Users.snapshot().users();
+            Consumer<T> matching = row -> {
+                if (predicate.test(row)) {
+                    sink.accept(row);
+                }
+            };
+            for (Users.User u : users) {
+                entity.rows.accept(u, matching);
+            }
+        }
+
+        /**
+         * Feed the matching index hits to {@code sink} in the order a scan of their snapshot
+         * would: only the accounts that can hold a hit are walked, unless a hit isn't held by
+         * any account it names.
+         */
+        private void inStorageOrder(Users.Lookup<T> found, Consumer<T> sink) {
+            Set<T> hits = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<String> accounts = new HashSet<>();
+            for (T row : found.rows()) {
+                if (predicate.test(row)) {
+                    hits.add(row);
+                    accounts.addAll(entity.holders.apply(row));
+                }
+            }
+            if (hits.isEmpty()) {
+                return;
+            }
+            List<T> ordered = new ArrayList<>(hits.size());
+            Consumer<T> hit = row -> {
+                if (hits.contains(row)) {
+                    ordered.add(row);
+                }
+            };
+            for (Users.User u : found.snapshot().users()) {
+                if (u.accounts() != null) {
+                    for (Users.Account a : u.accounts()) {
+                        if (accounts.contains(a.number())) {
+                            entity.accountRows.accept(a, hit);
+                        }
                     }
                 }
             }
-            return out;
+            if (ordered.size() < hits.size()) {
+                ordered.clear();
+                for (Users.User u : found.snapshot().users()) {
+                    entity.rows.accept(u, hit);
+                }
+            }
+            ordered.forEach(sink);
+        }
+
+        /** Feed the positions of the matching rows of one chunk to {@code sink}, in order. */
+        void forEachIn(TransactionColumns.Chunk chunk, IntConsumer sink) {
+            RowTest test = rowTest;
+            for (int r = 0, n = chunk.size(); r < n; r++) {
+                if (test.test(chunk, r)) {
+                    sink.accept(r);
+                }
+            }
+        }
+
+        /** Feed the matching rows of one user to {@code sink}, for scans that split the user list. */
+        void forEachOf(Users.User user, Consumer<T> sink) {
+            entity.rows.accept(user, row -> {
+                if (predicate.test(row)) {
+                    sink.accept(row);
+                }
+            });
+        }
+
+        /** Iterate the matching rows lazily in storage order, from the first. */
+        public SearchCursor<T> cursor() {
+            return new SearchCursor<>(this, null);
+        }
+
+        /**
+         * Continue after the row a previous cursor or page stopped at.
+         *
+         * @param after a token from {@link SearchCursor#token()} or {@link SearchCursor.Page#next()}
+         */
+        public SearchCursor<T> cursor(String after) {
+            return new SearchCursor<>(this, after == null ? null : SearchCursor.Position.parse(after));
+        }
+
+        /** Skip {@code offset} matches and return up to {@code limit} rows. */
+        public SearchCursor.Page<T> page(long offset, int limit) {
+            SearchCursor<T> cursor = cursor();
+            cursor.skip(offset);
+            return cursor.page(limit);
+        }
+
+        /** Up to {@code limit} rows after the token; keyset paging, no rows are skipped over. */
+        public SearchCursor.Page<T> page(String after, int limit) {
+            return cursor(after).page(limit);
+        }
+
+        /** {@link #run()}, answered from {@link SearchCache#shared()} while nothing changed. */
+        public List<T> runCached() {
+            return SearchCache.shared().run(this);
         }
 
-        return out;
+        /** {@link #run()} on the common ForkJoin pool. */
+        public List<T> runParallel() {
+            return runParallel(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Scan in parallel on {@code pool}. The user list is cut into parts of about equal
+         * weight, a few per worker, and the parts' results are joined left to right, so the
+         * result is the list {@link #run()} returns. A scan of the transaction columns is split by
+         * chunk instead. An indexed query only tests the rows of its range and runs as usual.
+         */
+        public List<T> runParallel(ForkJoinPool pool) {
+            if (range != null) {
+                return run();
+            }
+            if (rowTest != null) {
+                TransactionColumns columns = Users.transactionColumns();
+                return pool.invoke(new ChunkPart(columns, 0, columns.chunkCount()));
+            }
+            UserSpliterator users = UserSpliterator.of(Users.snapshot().users(), entity.weight);
+            long leafWeight = Math.max(1, users.weight() / (4L * pool.getParallelism()));
+            return pool.invoke(new Part(users, leafWeight));
+        }
+
+        private final class Part extends RecursiveTask<List<T>> {
+
+            private final UserSpliterator users;
+            private final long leafWeight;
+
+            Part(UserSpliterator users, long leafWeight) {
+                this.users = users;
+                this.leafWeight = leafWeight;
+            }
+
+            @Override
+            protected List<T> compute() {
+                if (users.weight() > leafWeight) {
+                    UserSpliterator left = users.trySplit();
+                    if (left != null) {
+                        Part first = new Part(left, leafWeight);
+                        first.fork();
+                        List<T> second = compute();
+                        List<T> out = first.join();
+                        out.addAll(second);
+                        return out;
+                    }
+                }
+                List<T> out = new ArrayList<>();
+                Consumer<T> sink = row -> {
+                    if (predicate.test(row)) {
+                        out.add(row);
+                    }
+                };
+                users.forEachRemaining(u -> entity.rows.accept(u, sink));
+                return out;
+            }
+        }
+
+        /** Chunks {@code [from, to)} of the columns; one chunk is the smallest part. */
+        private final class ChunkPart extends RecursiveTask<List<T>> {
+
+            private final TransactionColumns columns;
+            private final int from;
+            private final int to;
+
+            ChunkPart(TransactionColumns columns, int from, int to) {
+                this.columns = columns;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected List<T> compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) >>> 1;
+                    ChunkPart first = new ChunkPart(columns, from, mid);
+                    first.fork();
+                    List<T> second = new ChunkPart(columns, mid, to).compute();
+                    List<T> out = first.join();
+                    out.addAll(second);
+                    return out;
+                }
+                List<T> out = new ArrayList<>();
+                if (from < to) {
+                    TransactionColumns.Chunk chunk = columns.chunk(from);
+                    forEachIn(chunk, r -> out.add(entity.row(chunk, r)));
+                }
+                return out;
+            }
+        }
     }
 
-    private static Object get_field(Object o, String f) {
-        if (o instanceof Users.User u) {
-            if (f.equals("id")) return u.id();
-            if (f.equals("name")) return u.name();
-            if (f.equals("role")) return u.role();
-            if (f.equals("password")) return u.password();
+    public static final Entity<Users.User> USERS = new Entity<>("users", Map.of(
+            "id", new LongField<Users.User>(Users.User::id),
+            "username", new TextField<Users.User>(Users.User::username),
+            "name", new TextField<Users.User>(Users.User::name),
+            "role", new TextField<Users.User>(Users.User::role),
+            "password", new TextField<Users.User>(Users.User::password),
+            "email", new TextField<Users.User>(Users.User::email)
+    ), (u, sink) -> sink.accept(u), u -> 1, Map.of(), null, null, 0, Search::usersVersion, null);
+
+    // A user row carries its accounts, so a posting changes it too; both counters only grow
+    private static long usersVersion() {
+        return Users.userVersion() + Users.accountVersion();
+    }
+
+    public static final Entity<Users.Account> ACCOUNTS = new Entity<>("accounts", Map.of(
+            "type", new TextField<Users.Account>(Users.Account::type),
+            "number", new TextField<Users.Account>(Users.Account::number),
+            "balance", new MoneyField<Users.Account>(Users.Account::balanceCents)
+    ), Search::accountsOf, u -> 1 + accountCount(u), Map.of(
+            "balance", r -> Users.accountsByBalance(r.from(), r.fromInclusive(), r.to(), r.toInclusive())
+    ), (a, sink) -> sink.accept(a), a -> List.of(a.number()), 1, Users::accountVersion, null);
+
+    public static final Entity<Users.Transaction> TRANSACTIONS = new Entity<>("transactions", Map.of(
+            "date", new LongField<Users.Transaction>(Users.Transaction::date, (c, r) -> c.dates()[r]),
+            "amount", new MoneyField<Users.Transaction>(Users.Transaction::amountCents, (c, r) -> c.amounts()[r]),
+            "details", new TextField<Users.Transaction>(Users.Transaction::details),
+            "to_account", new TextField<Users.Transaction>(Users.Transaction::to_account, (c, r) -> c.toAccounts()[r]),
+            "from_account", new TextField<Users.Transaction>(Users.Transaction::from_account, (c, r) -> c.fromAccounts()[r]),
+            "recipient_id", new LongField<Users.Transaction>(Users.Transaction::recipient_id, (c, r) -> c.recipients()[r]),
+            "recipient_name", new TextField<Users.Transaction>(Users.Transaction::recipient_name, (c, r) -> c.recipientNames()[r])
+    ), Search::transactionsOf, u -> 1 + accountCount(u) + transactionCount(u), Map.of(
+            "date", r -> Users.transactionsByDate(r.from(), r.fromInclusive(), r.to(), r.toInclusive()),
+            "amount", r -> Users.transactionsByAmount(r.from(), r.fromInclusive(), r.to(), r.toInclusive())
+    ), Search::transactionsOf, t -> Arrays.asList(t.from_account(), t.to_account()), 2, Users::transactionVersion,
+            TransactionColumns.Chunk::row);
+
+    public static Entity<?> entity(String things) {
+        return switch (things) {
+            case "users" -> USERS;
+            case "accounts" -> ACCOUNTS;
+            case "transactions" -> TRANSACTIONS;
+            default -> throw new IllegalArgumentException("Unknown entity: " + things);
+        };
+    }
+
+    /**
+     * Compile and run a single condition.
+     *
+     * @return the matching users, accounts or transactions; empty for an unknown entity or field
+     */
+    public static List<Object> all(String things, String field, String condition, Object value) {
+        try {
+            return new ArrayList<>(entity(things).where(field, condition, value).run());
+        } catch (IllegalArgumentException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private static void accountsOf(Users.User user, Consumer<Users.Account> sink) {
+        List<Users.Account> accounts = user.accounts();
+        if (accounts == null) {
+            return;
+        }
+        for (int j = 0; j < accounts.size(); j++) {
+            sink.accept(accounts.get(j));
         }
+    }
 
-        if (o instanceof Users.Account a) {
-            if (f.equals("type")) return a.type();
-            if (f.equals("number")) return a.number();
-            if (f.equals("balance")) return a.balance();
+    private static void transactionsOf(Users.User user, Consumer<Users.Transaction> sink) {
+        List<Users.Account> accounts = user.accounts();
+        if (accounts == null) {
+            return;
+        }
+        for (int j = 0; j < accounts.size(); j++) {
+            transactionsOf(accounts.get(j), sink);
         }
+    }
 
-        if (o instanceof Users.Transaction t) {
-            if (f.equals("date")) return t.date();
-            if (f.equals("amount")) return t.amount();
-            if (f.equals("details")) return t.details();
-            if (f.equals("to_account")) return t.to_account();
-            if (f.equals("from_account")) return t.from_account();
-            if (f.equals("recipient_id")) return t.recipient_id();
-            if (f.equals("recipient_name")) return t.recipient_name();
+    private static void transactionsOf(Users.Account account, Consumer<Users.Transaction> sink) {
+        List<Users.Transaction> txs = account.transactions();
+        if (txs == null) {
+            return;
         }
+        for (int k = 0; k < txs.size(); k++) {
+            sink.accept(txs.get(k));
+        }
+    }
 
-        return null;
+    private static long accountCount(Users.User user) {
+        return user.accounts() == null ? 0 : user.accounts().size();
     }
 
-    private static boolean match(Object a, String c, Object b) {
-        if (a instanceof Number n1 && b instanceof Number n2) {
-            long x = n1.longValue();
-            long y = n2.longValue();
-            if (c.equals("<")) return x < y;
-            if (c.equals("=")) return x == y;
-            if (c.equals(">")) return x > y;
-            return false;
+    private static long transactionCount(Users.User user) {
+        long n = 0;
+        if (user.accounts() != null) {
+            for (Users.Account a : user.accounts()) {
+                n += a.transactions() == null ? 0 : a.transactions().size();
+            }
         }
+        return n;
+    }
+
+    // The same condition always reads the same: numbers in the field's type, text quoted
+    private static String normalized(Field<?> f, String field, Object value) {
+        return switch (f) {
+            case LongField<?> l -> {
+                Number n = numberOf(field, value);
+                double d = n.doubleValue();
+                yield d == Math.rint(d) && !Double.isInfinite(d) ? Long.toString(n.longValue()) : Double.toString(d);
+            }
+            case MoneyField<?> m -> Money.format(centsOf(field, value));
+            case TextField<?> t -> '"' + String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        };
+    }
+
+    private static long floor(double v) {
+        return v <= Long.MIN_VALUE ? Long.MIN_VALUE : (long) Math.floor(v);
+    }
 
-        if (a instanceof String s1 && b instanceof String s2) {
-            if (c.equals("=")) return s1.equals(s2);
-            return false;
+    private static long ceil(double v) {
+        return v >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) Math.ceil(v);
+    }
+
+    private static Number numberOf(String field, Object value) {
+        if (value instanceof Number n) {
+            return n;
+        }
+        if (value instanceof String s) {
+            try {
+                if (field.equals("date") && s.indexOf('-') > 0) {
+                    return Convert.date(s);
+                }
+                return s.contains(".") ? (Number) Double.parseDouble(s) : (Number) Long.parseLong(s);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Not a number for " + field + ": " + s, e);
+            }
+        }
+        throw new IllegalArgumentException("Not a number for " + field + ": " + value);
+    }
+
+    /**
+     * A money bound in cents: a money string, a whole number of units, or a double holding a
+     * whole number of cents. A bound finer than a cent is rejected rather than rounded.
+     */
+    private static long centsOf(String field, Object value) {
+        try {
+            if (value instanceof String s) {
+                return Money.parse(s);
+            }
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return Money.multiply(((Number) value).longValue(), 100);
+            }
+            if (value instanceof Number n) {
+                long cents = Money.cents(n.doubleValue());
+                if (Money.amount(cents) != n.doubleValue()) {
+                    throw new IllegalArgumentException("Not a whole number of cents for " + field + ": " + value);
+                }
+                return cents;
+            }
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount out of range for " + field + ": " + value, e);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an amount for " + field + ": " + value, e);
         }
+        throw new IllegalArgumentException("Not a number for " + field + ": " + value);
+    }
+
+    private static <T> Predicate<T> compileLong(ToLongFunction<T> get, Op op, Number value) {
+        double exact = value.doubleValue();
+        if (!(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+                && exact != Math.rint(exact)) {
+            // A fraction: compare in double rather than rounding the bound
+            return compileDouble(row -> (double) get.applyAsLong(row), op, exact);
+        }
+        long v = value.longValue();
+        return switch (op) {
+            case LT -> row -> get.applyAsLong(row) < v;
+            case LE -> row -> get.applyAsLong(row) <= v;
+            case EQ -> row -> get.applyAsLong(row) == v;
+            case GE -> row -> get.applyAsLong(row) >= v;
+            case GT -> row -> get.applyAsLong(row) > v;
+            case NE -> row -> get.applyAsLong(row) != v;
+            case PREFIX, CONTAINS -> throw new IllegalArgumentException(op.symbol() + " needs a text field");
+        };
+    }
+
+    /** {@link #compileLong} on a column. */
+    private static RowTest compileColumn(LongColumn get, Op op, Number value) {
+        double exact = value.doubleValue();
+        if (!(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+                && exact != Math.rint(exact)) {
+            return switch (op) {
+                case LT -> (c, r) -> get.get(c, r) < exact;
+                case LE -> (c, r) -> get.get(c, r) <= exact;
+                case EQ -> (c, r) -> get.get(c, r) == exact;
+                case GE -> (c, r) -> get.get(c, r) >= exact;
+                case GT -> (c, r) -> get.get(c, r) > exact;
+                case NE -> (c, r) -> get.get(c, r) != exact;
+                case PREFIX, CONTAINS -> throw new IllegalArgumentException(op.symbol() + " needs a text field");
+            };
+        }
+        long v = value.longValue();
+        return switch (op) {
+            case LT -> (c, r) -> get.get(c, r) < v;
+            case LE -> (c, r) -> get.get(c, r) <= v;
+            case EQ -> (c, r) -> get.get(c, r) == v;
+            case GE -> (c, r) -> get.get(c, r) >= v;
+            case GT -> (c, r) -> get.get(c, r) > v;
+            case NE -> (c, r) -> get.get(c, r) != v;
+            case PREFIX, CONTAINS -> throw new IllegalArgumentException(op.symbol() + " needs a text field");
+        };
+    }
+
+    /**
+     * Equality on a dictionary column compares ids; null for the other operators, which need
+     * the text.
+     */
+    private static RowTest compileIds(IdColumn get, Op op, String v) {
+        int id = TransactionColumns.intern(v);
+        return switch (op) {
+            case EQ -> (c, r) -> get.get(c, r) == id;
+            case NE -> (c, r) -> get.get(c, r) != id;
+            default -> null;
+        };
+    }
+
+    private static <T> Predicate<T> compileDouble(ToDoubleFunction<T> get, Op op, double v) {
+        return switch (op) {
+            case LT -> row -> get.applyAsDouble(row) < v;
+            case LE -> row -> get.applyAsDouble(row) <= v;
+            case EQ -> row -> get.applyAsDouble(row) == v;
+            case GE -> row -> get.applyAsDouble(row) >= v;
+            case GT -> row -> get.applyAsDouble(row) > v;
+            case NE -> row -> get.applyAsDouble(row) != v;
+            case PREFIX, CONTAINS -> throw new IllegalArgumentException(op.symbol() + " needs a text field");
+        };
+    }
 
-        return false;
+    // A missing (null) text only matches !=
+    private static <T> Predicate<T> compileText(Function<T, String> get, Op op, String v) {
+        return switch (op) {
+            case LT -> row -> { String s = get.apply(row); return s != null && s.compareTo(v) < 0; };
+            case LE -> row -> { String s = get.apply(row); return s != null && s.compareTo(v) <= 0; };
+            case EQ -> row -> v.equals(get.apply(row));
+            case GE -> row -> { String s = get.apply(row); return s != null && s.compareTo(v) >= 0; };
+            case GT -> row -> { String s = get.apply(row); return s != null && s.compareTo(v) > 0; };
+            case NE -> row -> !v.equals(get.apply(row));
+            case PREFIX -> row -> { String s = get.apply(row); return s != null && s.startsWith(v); };
+            case CONTAINS -> row -> { String s = get.apply(row); return s != null && s.contains(v); };
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package bank;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of recent searches, keyed by the normalized query text. An entry remembers the version
+ * of its entity it was computed at ({@link bank.user.Users#transactionVersion()} and friends) and
+ * is only served while that version is current, so a posting drops cached transaction and
+ * account results but not user results.
+ * <p>
+ * Bounded both in entries and in rows held; the least recently used entries go first. Results
+ * are shared between callers and can't be modified.
+ */
+public final class SearchCache {
+
+    private static final SearchCache SHARED = new SearchCache(256, 1_000_000);
+
+    /** Counters since the cache was created or last cleared. */
+    public record Stats(long hits, long misses, long evictions, long invalidations, int entries, long rows) {}
+
+    private record Entry(long version, List<?> rows) {}
+
+    private final int maxEntries;
+    private final long maxRows;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rows;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public SearchCache(int maxEntries, long maxRows) {
+        if (maxEntries <= 0 || maxRows <= 0) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+    }
+
+    /** The cache behind {@link Search.Query#runCached()}. */
+    public static SearchCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The query's result, from the cache if it was computed since the entity last changed.
+     * A miss runs the query outside the cache's lock.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> run(Search.Query<T> query) {
+        String key = query.text();
+        // Read before running: a write during the run leaves the entry already stale
+        long version = query.entity().version();
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                if (e.version() == version) {
+                    hits++;
+                    return (List<T>) e.rows();
+                }
+                remove(key, e);
+                invalidations++;
+            }
+            misses++;
+        }
+        List<T> result = Collections.unmodifiableList(query.run());
+        synchronized (this) {
+            Entry old = entries.get(key);
+            if (old != null) {
+                remove(key, old);
+            }
+            if (result.size() <= maxRows) {
+                entries.put(key, new Entry(version, result));
+                rows += result.size();
+                evict();
+            }
+        }
+        return result;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), rows);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        rows = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        invalidations = 0;
+    }
+
+    private void remove(String key, Entry e) {
+        entries.remove(key);
+        rows -= e.rows().size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || rows > maxRows) && eldest.hasNext()) {
+            Map.Entry<String, Entry> e = eldest.next();
+            rows -= e.getValue().rows().size();
+            eldest.remove();
+            evictions++;
+        }
+    }
+}
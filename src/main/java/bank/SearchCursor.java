@@ -0,0 +1,236 @@
+package bank;
+
+import bank.user.Users;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy walk over the rows matching a {@link Search.Query}, in storage order: user, then account,
+ * then transaction. Nothing is collected up front, so a page costs memory for its own rows only.
+ * The cursor walks the {@link Users#snapshot() snapshot} taken when it was created, so a page
+ * never mixes rows from before and after a posting.
+ * <p>
+ * Where the cursor stopped is a {@link Position}, and its string form is a keyset continuation
+ * token: a later cursor starts right after that row instead of counting matches again. Account
+ * and transaction positions are checked against the user id and account number they were taken
+ * from, so users or accounts added or removed in front of the position don't shift it.
+ *
+ * @param <T> the row type of the query's entity
+ */
+public final class SearchCursor<T> implements Iterator<T> {
+
+    /**
+     * A row's place in storage. {@code account} and {@code accountSlot} are unused for users,
+     * {@code row} is only used for transactions.
+     */
+    public record Position(long userId, int userSlot, String account, int accountSlot, int row) {
+
+        /** The token form: {@code userId:userSlot:accountSlot:row:account}. */
+        @Override
+        public String toString() {
+            return userId + ":" + userSlot + ":" + accountSlot + ":" + row + ":" + (account == null ? "" : account);
+        }
+
+        public static Position parse(String token) {
+            String[] parts = token.split(":", 5);
+            if (parts.length != 5) {
+                throw new IllegalArgumentException("Not a search position: " + token);
+            }
+            try {
+                return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]),
+                        parts[4].isEmpty() ? null : parts[4], Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a search position: " + token, e);
+            }
+        }
+    }
+
+    /**
+     * One page of rows.
+     *
+     * @param next token to continue after the last row, or null if there are no more matches
+     */
+    public record Page<T>(List<T> rows, String next) {}
+
+    private final Search.Query<T> query;
+    private final int depth;
+    private final List<Users.User> users;
+
+    // Slots of the next row to look at
+    private int userSlot;
+    private int accountSlot;
+    private int row;
+
+    private T next;
+    private Position nextPosition;
+    private Position last;
+
+    SearchCursor(Search.Query<T> query, Position after) {
+        this.query = query;
+        this.depth = query.entity().depth();
+        this.users = Users.snapshot().users();
+        if (after != null) {
+            resume(after);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T row = next;
+        last = nextPosition;
+        next = null;
+        return row;
+    }
+
+    /** Where the last row returned by {@link #next()} is; null before the first one. */
+    public Position position() {
+        return last;
+    }
+
+    /** Continuation token after the last row returned; null before the first one. */
+    public String token() {
+        return last == null ? null : last.toString();
+    }
+
+    /** Skip up to {@code n} matching rows, for offset paging. */
+    public void skip(long n) {
+        for (long i = 0; i < n && hasNext(); i++) {
+            next();
+        }
+    }
+
+    /** Take up to {@code limit} more rows. */
+    public Page<T> page(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        List<T> rows = new ArrayList<>(Math.min(limit, 1024));
+        while (rows.size() < limit && hasNext()) {
+            rows.add(next());
+        }
+        return new Page<>(rows, hasNext() ? token() : null);
+    }
+
+    // Move to the next matching row, or leave next null at the end
+    @SuppressWarnings("unchecked")
+    private void advance() {
+        while (userSlot < users.size()) {
+            Users.User user = users.get(userSlot);
+            if (depth == 0) {
+                Position at = new Position(user.id(), userSlot, null, -1, -1);
+                userSlot++;
+                if (offer((T) user, at)) {
+                    return;
+                }
+                continue;
+            }
+            List<Users.Account> accounts = user.accounts();
+            if (accounts == null || accountSlot >= accounts.size()) {
+                userSlot++;
+                accountSlot = 0;
+                row = 0;
+                continue;
+            }
+            Users.Account account = accounts.get(accountSlot);
+            if (depth == 1) {
+                Position at = new Position(user.id(), userSlot, account.number(), accountSlot, -1);
+                accountSlot++;
+                if (offer((T) account, at)) {
+                    return;
+                }
+                continue;
+            }
+            List<Users.Transaction> txs = account.transactions();
+            if (txs == null || row >= txs.size()) {
+                accountSlot++;
+                row = 0;
+                continue;
+            }
+            Position at = new Position(user.id(), userSlot, account.number(), accountSlot, row);
+            Users.Transaction tx = txs.get(row++);
+            if (offer((T) tx, at)) {
+                return;
+            }
+        }
+    }
+
+    private boolean offer(T candidate, Position at) {
+        if (query.test(candidate)) {
+            next = candidate;
+            nextPosition = at;
+            return true;
+        }
+        return false;
+    }
+
+    // Start right after the row at this position
+    private void resume(Position after) {
+        int u = findUser(after);
+        if (u < 0) {
+            // The user is gone: whoever took its slot comes next
+            userSlot = Math.max(0, after.userSlot());
+            return;
+        }
+        userSlot = u;
+        if (depth == 0) {
+            userSlot++;
+            return;
+        }
+        List<Users.Account> accounts = users.get(u).accounts();
+        int a = findAccount(accounts, after);
+        if (a < 0) {
+            accountSlot = Math.max(0, after.accountSlot());
+            return;
+        }
+        accountSlot = a;
+        if (depth == 1) {
+            accountSlot++;
+            return;
+        }
+        // Histories only grow, so the row index still points at the same transaction
+        row = after.row() + 1;
+    }
+
+    private int findUser(Position p) {
+        int slot = p.userSlot();
+        if (slot >= 0 && slot < users.size() && users.get(slot).id() == p.userId()) {
+            return slot;
+        }
+        for (int i = 0; i < users.size(); i++) {
+            if (users.get(i).id() == p.userId()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int findAccount(List<Users.Account> accounts, Position p) {
+        if (accounts == null || p.account() == null) {
+            return -1;
+        }
+        int slot = p.accountSlot();
+        if (slot >= 0 && slot < accounts.size() && p.account().equals(accounts.get(slot).number())) {
+            return slot;
+        }
+        for (int i = 0; i < accounts.size(); i++) {
+            if (p.account().equals(accounts.get(i).number())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,90 @@
+package bank;
+
+import bank.user.Users;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Walks a range of the user list and splits it where the weight (rows a search will visit, e.g.
+ * transactions) is halved rather than where the user count is, so the few users that hold
+ * most of the history don't all end up in one part. The prefix sums of the weights are
+ * computed once and shared by all parts.
+ */
+final class UserSpliterator implements Spliterator<Users.User> {
+
+    private final List<Users.User> users;
+    private final long[] prefix;
+    private int lo;
+    private final int hi;
+
+    private UserSpliterator(List<Users.User> users, long[] prefix, int lo, int hi) {
+        this.users = users;
+        this.prefix = prefix;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    static UserSpliterator of(List<Users.User> users, ToLongFunction<Users.User> weight) {
+        long[] prefix = new long[users.size() + 1];
+        for (int i = 0; i < users.size(); i++) {
+            prefix[i + 1] = prefix[i] + weight.applyAsLong(users.get(i));
+        }
+        return new UserSpliterator(users, prefix, 0, users.size());
+    }
+
+    /** Weight of the users left in this part. */
+    long weight() {
+        return prefix[hi] - prefix[lo];
+    }
+
+    @Override
+    public UserSpliterator trySplit() {
+        if (hi - lo < 2) {
+            return null;
+        }
+        long half = prefix[lo] + weight() / 2;
+        // First index whose prefix reaches the half, kept inside the range on both sides
+        int a = lo + 1;
+        int b = hi - 1;
+        while (a < b) {
+            int m = (a + b) >>> 1;
+            if (prefix[m] < half) {
+                a = m + 1;
+            } else {
+                b = m;
+            }
+        }
+        UserSpliterator left = new UserSpliterator(users, prefix, lo, a);
+        lo = a;
+        return left;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Users.User> action) {
+        if (lo >= hi) {
+            return false;
+        }
+        action.accept(users.get(lo++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Users.User> action) {
+        while (lo < hi) {
+            action.accept(users.get(lo++));
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return hi - lo;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+}
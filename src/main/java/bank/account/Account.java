@@ -1,5 +1,6 @@
 package bank.account;
 
+import bank.Money;
 import bank.transaction.Transaction;
 import bank.user.Customer;
 import bank.utils.InternalLogger;
@@ -13,7 +14,8 @@ public abstract class Account {
     private long id;
     private String accountNumber;
     private String accountType;
-    private double balance;
+    // In cents
+    private long balance;
     private String status;
     protected Customer customer;
     private ArrayList<Transaction> transactions;
@@ -25,7 +27,7 @@ public abstract class Account {
         this.id = generateId();
         this.accountNumber = accountNumber;
         this.accountType = accountType;
-        this.balance = balance;
+        this.balance = Money.cents(balance);
         this.status = status;
         this.customer = customer;
         this.transactions = new ArrayList<>();
@@ -35,7 +37,7 @@ public abstract class Account {
         this.id = generateId();
         this.accountNumber = accountNumber;
         this.accountType = accountType;
-        this.balance = balance;
+        this.balance = Money.cents(balance);
         this.status = status;
         this.transactions = new ArrayList<>();
     }
@@ -69,11 +71,15 @@ public abstract class Account {
     }
 
     public double getBalance() {
+        return Money.amount(balance);
+    }
+
+    public long getBalanceCents() {
         return balance;
     }
 
     public void setBalance(double balance) {
-        this.balance = balance;
+        this.balance = Money.cents(balance);
     }
 
     public String getStatus() {
@@ -113,9 +119,10 @@ public abstract class Account {
         if (amount <= 0) {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
+        long cents = Money.cents(amount);
         logger.info(customer.getName() + " (id: " + customer.getId() + ") deposited " + amount + " to " + accountNumber);
 
-        this.balance = this.balance + amount;
+        this.balance = Money.add(this.balance, cents);
 
         // Add the transaction to the transaction list
         Transaction transaction = new Transaction("Deposit", "Completed", amount, customer.getName(), this);
@@ -126,11 +133,12 @@ public abstract class Account {
         if (amount <= 0) {
             throw new IllegalArgumentException("Withdrawal amount must be positive");
         }
-        if (amount > this.balance) {
+        long cents = Money.cents(amount);
+        if (cents > this.balance) {
             throw new IllegalArgumentException("Insufficient funds");
         }
         logger.info(customer.getName() + " (id: " + customer.getId() + ") withdrew " + amount + " from account " + accountNumber);
-        this.balance = this.balance - amount;
+        this.balance = Money.subtract(this.balance, cents);
 
         // Add the transaction to the transaction list
         Transaction transaction = new Transaction("Withdrawal", "Completed", amount, customer.getName(), this);
@@ -146,7 +154,7 @@ public abstract class Account {
             "  Account ID: " + id + "\n" +
             "  Account Number: " + accountNumber + "\n" +
             "  Account Type: " + accountType + "\n" +
-            "  Balance: " + balance + "\n" +
+            "  Balance: " + Money.format(balance) + "\n" +
             "  Status: " + status + "\n" +
             "  Customer: " + (customer != null ? customer.getName() : "None") + "\n" +
             "  Transactions: " + transactions + "\n" +
@@ -1,5 +1,6 @@
 package bank.controller;
 
+import bank.user.UserSearchIndex;
 import bank.user.Users;
 import bank.user.Users.User;
 import bank.branch.Bank;
@@ -23,7 +24,6 @@ import javafx.scene.Scene;
 import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 public class AdminController {
 
@@ -54,6 +54,10 @@ public class AdminController {
     // Observable list of all users
     private ObservableList<User> allUsers;
 
+    // Shown while a keyword is typed; refilled in place on each keystroke
+    private final ObservableList<User> filteredUsers = FXCollections.observableArrayList();
+    private UserSearchIndex.Session userSearch;
+
     private static final InternalLogger LOGGER = new InternalLogger();
 
     private BranchManager branchManager;
@@ -73,10 +77,10 @@ public class AdminController {
     }
 
     private void loadUsers() {
-        // Load users from the Users class
-        Users.load();
-        List<User> usersList = Users.get();
-        allUsers = FXCollections.observableArrayList(usersList);
+        // The in-memory users are current; re-reading the files would block the FX thread
+        Users.Snapshot snapshot = Users.snapshot();
+        allUsers = FXCollections.observableArrayList(snapshot.users());
+        userSearch = UserSearchIndex.forUsers(snapshot).session();
 
         // Load data into the table
         usersTable.setItems(allUsers);
@@ -137,20 +141,17 @@ public class AdminController {
         };
     }
 
-    // Filter users by name or role
+    // Filter users by name or role through the n-gram index
     private void filterUsers(String keyword) {
         if (keyword == null || keyword.isBlank()) {
             usersTable.setItems(allUsers);
             return;
         }
 
-        String lowerKeyword = keyword.toLowerCase();
-        List<User> filtered = allUsers.stream()
-                .filter(user -> user.name().toLowerCase().contains(lowerKeyword) ||
-                        user.role().toLowerCase().contains(lowerKeyword))
-                .collect(Collectors.toList());
-
-        usersTable.setItems(FXCollections.observableArrayList(filtered));
+        filteredUsers.setAll(userSearch.filter(keyword));
+        if (usersTable.getItems() != filteredUsers) {
+            usersTable.setItems(filteredUsers);
+        }
     }
 
     // Open AdminManageRolePage in a popup window
@@ -100,7 +100,7 @@ public class AdminCreateAccountController {
 
             // Add user to the system
             Users.add(newUser);
-            Users.save();
+            Users.saveAsync();
 
             LOGGER.info("Created new user: " + name + " (" + roleUpperCase + ")");
 
@@ -154,8 +154,7 @@ public class AdminCreateAccountController {
     // Helper
     private long generateUniqueUserId() {
         // Get all existing users
-        Users.load();
-        var allUsers = Users.get();
+        var allUsers = Users.snapshot().users();
 
         // Find the maximum ID and add 1
         long maxId = allUsers.stream()
@@ -1,5 +1,6 @@
 package bank.controller;
 
+import bank.Money;
 import bank.account.Account;
 import bank.user.Customer;
 import bank.user.User;
@@ -175,7 +176,8 @@ public class DepositController {
 
         double amount;
         try {
-            amount = Double.parseDouble(amountStr);
+            // Exactly the cents typed, e.g. "1,250.50"; more than two decimals is rejected
+            amount = Money.amount(Money.parse(amountStr));
             if (amount <= 0) {
                 messageLabel.setText("Amount must be positive.");
                 messageLabel.setStyle("-fx-text-fill: #DC3545;");
@@ -197,7 +199,7 @@ public class DepositController {
             return;
         }
 
-        if (fromAccount.getBalance() < amount) {
+        if (fromAccount.getBalanceCents() < Money.cents(amount)) {
             messageLabel.setText("Insufficient funds.");
             messageLabel.setStyle("-fx-text-fill: #DC3545;");
             return;
@@ -42,8 +42,7 @@ public class OpenNewAccountController {
     }
 
     private void populateCustomers() {
-        Users.load();
-        for (Users.User user : Users.get()) {
+        for (Users.User user : Users.snapshot().users()) {
             // Only show customers (not tellers/managers/admins)
             if ("CUSTOMER".equals(user.role())) {
                 String display = user.name() + " (ID: " + user.id() + ")";
@@ -142,18 +141,6 @@ public class OpenNewAccountController {
      * Example: Customer ID 2 gets accounts 2001, 2002, 2003, etc.
      */
     private String generateUniqueAccountNumber(long customerId) {
-        Users.load();
-        java.util.Set<String> existingNumbers = new java.util.HashSet<>();
-
-        // Collect all existing account numbers
-        for (Users.User u : Users.get()) {
-            if (u.accounts() != null) {
-                for (Users.Account acc : u.accounts()) {
-                    existingNumbers.add(acc.number());
-                }
-            }
-        }
-
         int suffix = 1;
         String accountNumber;
 
@@ -161,7 +148,7 @@ public class OpenNewAccountController {
             // Format: customerId + zero padded 3 digit suffix
             accountNumber = String.format("%d%03d", customerId, suffix);
             suffix++;
-        } while (existingNumbers.contains(accountNumber));
+        } while (Users.accountExists(accountNumber));
 
         return accountNumber;
     }
@@ -1,5 +1,6 @@
 package bank.controller;
 
+import bank.Money;
 import bank.account.Account;
 import bank.account.Card;
 import bank.account.Check;
@@ -195,11 +196,9 @@ public class TellerController {
     }
 
     private ObservableList<Account> getAccountData() {
-        Users.load();
-
         ArrayList<Account> backendList = new ArrayList<>();
 
-        for (Users.User u : Users.get()) {
+        for (Users.User u : Users.snapshot().users()) {
             String name = u.name();
             String username = u.username();
 
@@ -215,16 +214,16 @@ public class TellerController {
                     switch (acc.type()) {
                         case "Checking":
                         case "Check":
-                            account = new Check(acc.number(), acc.balance(), acc.type(), customer);
+                            account = new Check(acc.number(), Money.amount(acc.balanceCents()), acc.type(), customer);
                             break;
 
                         case "Card":
-                            account = new Card(acc.number(), acc.balance(), acc.type(), customer);
+                            account = new Card(acc.number(), Money.amount(acc.balanceCents()), acc.type(), customer);
                             break;
 
                         case "Savings":
                         case "Saving":
-                            account = new Saving(acc.number(), acc.balance(), acc.type(), customer);
+                            account = new Saving(acc.number(), Money.amount(acc.balanceCents()), acc.type(), customer);
                             break;
 
                         default:
@@ -1,5 +1,6 @@
 package bank.controller;
 
+import bank.Money;
 import bank.account.Account;
 import bank.user.Customer;
 import bank.user.Role;
@@ -252,7 +253,8 @@ public class WithdrawController {
 
         double amount;
         try {
-            amount = Double.parseDouble(amountStr);
+            // Exactly the cents typed, e.g. "1,250.50"; more than two decimals is rejected
+            amount = Money.amount(Money.parse(amountStr));
             if (amount <= 0) {
                 messageLabel.setText("Amount must be positive.");
                 messageLabel.setStyle("-fx-text-fill: #DC3545;");
@@ -272,7 +274,7 @@ public class WithdrawController {
             return;
         }
 
-        if (fromAccount.getBalance() < amount) {
+        if (fromAccount.getBalanceCents() < Money.cents(amount)) {
             messageLabel.setText("Insufficient funds.");
             messageLabel.setStyle("-fx-text-fill: #DC3545;");
             return;
@@ -1,6 +1,7 @@
 package bank.transaction;
 
 import java.util.Date;
+import bank.Money;
 import bank.account.Account;
 
 public class Transaction {
@@ -9,7 +10,8 @@ public class Transaction {
     private Date date;
     private String type;
     private String status;
-    private double amount;
+    // In cents
+    private long amount;
     private String recipient;
     private Account account;
 
@@ -22,7 +24,7 @@ public class Transaction {
         this.date = date;
         this.type = type;
         this.status = status;
-        this.amount = amount;
+        this.amount = Money.cents(amount);
         this.recipient = recipient;
         this.account = account;
     }
@@ -64,11 +66,15 @@ public class Transaction {
     }
 
     public double getAmount() {
+        return Money.amount(amount);
+    }
+
+    public long getAmountCents() {
         return amount;
     }
 
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amount = Money.cents(amount);
     }
 
     public String getRecipient() {
@@ -101,7 +107,7 @@ public class Transaction {
                 "  Date: " + date + "\n" +
                 "  Type: " + type + "\n" +
                 "  Status: " + status + "\n" +
-                "  Amount: " + amount + "\n" +
+                "  Amount: " + Money.format(amount) + "\n" +
                 "  Recipient: " + recipient + "\n" +
                 "  Account: " + (account != null ? account.getAccountNumber() : "None") + "\n" +
                 "]";
@@ -0,0 +1,91 @@
+package bank.user;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that account numbers hash onto. Postings lock the stripes of the
+ * accounts they touch, so postings on unrelated accounts run side by side while two postings on
+ * one account are serialized. A transfer locks its two stripes lowest index first, so transfers
+ * in opposite directions between the same accounts can't deadlock.
+ */
+final class AccountLocks {
+
+    /** Locks taken by {@link #lock}; closing releases them. */
+    interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final ReentrantLock[] stripes;
+
+    /** @param count number of stripes, rounded up to a power of two */
+    AccountLocks(int count) {
+        int n = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    int stripe(String account) {
+        int h = account == null ? 0 : account.hashCode();
+        // Spread the high bits, account numbers often differ only in their last digits
+        h ^= h >>> 16;
+        return h & (stripes.length - 1);
+    }
+
+    Held lock(String account) {
+        ReentrantLock lock = stripes[stripe(account)];
+        lock.lock();
+        return lock::unlock;
+    }
+
+    /** Lock both accounts' stripes in stripe order; once if they share a stripe. */
+    Held lock(String a, String b) {
+        int sa = stripe(a);
+        int sb = stripe(b);
+        if (sa == sb) {
+            return lock(a);
+        }
+        ReentrantLock first = stripes[Math.min(sa, sb)];
+        ReentrantLock second = stripes[Math.max(sa, sb)];
+        first.lock();
+        try {
+            second.lock();
+        } catch (RuntimeException | Error e) {
+            first.unlock();
+            throw e;
+        }
+        return () -> {
+            second.unlock();
+            first.unlock();
+        };
+    }
+
+    /** Lock the stripes of all the accounts, lowest index first, each once. */
+    Held lockAll(Collection<String> accounts) {
+        BitSet wanted = new BitSet(stripes.length);
+        for (String account : accounts) {
+            wanted.set(stripe(account));
+        }
+        int[] order = wanted.stream().toArray();
+        int locked = 0;
+        try {
+            for (; locked < order.length; locked++) {
+                stripes[order[locked]].lock();
+            }
+        } catch (RuntimeException | Error e) {
+            unlock(order, locked);
+            throw e;
+        }
+        return () -> unlock(order, order.length);
+    }
+
+    private void unlock(int[] order, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[order[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package bank.user;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Crash-safe file replacement: write a temp file next to the target, force it to disk and
+ * rename it into place, so readers see either the old or the new content, never a mix.
+ */
+final class AtomicFiles {
+
+    /** Fills the temp file. */
+    interface Body {
+        void write(FileChannel ch) throws IOException;
+    }
+
+    private AtomicFiles() {}
+
+    static void write(Path target, Body body) throws IOException {
+        Path abs = target.toAbsolutePath();
+        Path tmp = abs.resolveSibling(abs.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            body.write(ch);
+            ch.force(true);
+        }
+        Files.move(tmp, abs, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Make renames in a directory durable; not every platform lets a directory be opened, so this is best effort. */
+    static void forceDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+            // e.g. Windows
+        }
+    }
+}
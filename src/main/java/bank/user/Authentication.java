@@ -27,11 +27,7 @@ public class Authentication {
             return Optional.empty();
         }
 
-        // Search for user by username
-        Users.User user = repository.getAll().stream()
-                .filter(u -> username.equals(u.username()))
-                .findFirst()
-                .orElse(null);
+        Users.User user = repository.getByUsername(username);
 
         if (user == null) {
             return Optional.empty();
@@ -112,7 +108,6 @@ public class Authentication {
             return false;
         }
 
-        return repository.getAll().stream()
-                .anyMatch(u -> username.equals(u.username()));
+        return repository.getByUsername(username) != null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+package bank.user;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ordered stream of {@link UserChange}s with increasing sequence numbers. The most recent
+ * changes are retained so a subscriber can resume after the last one it saw; a subscriber that
+ * fell further behind gets a {@link UserChange.Type#RELOADED} and rebuilds.
+ * Listeners run synchronously on the thread making the change, one change at a time in sequence
+ * order, so they should only update in-memory state.
+ * <p>
+ * A writer may {@linkplain #queuePosted queue} a change while it holds the lock that orders its
+ * changes, so the sequence follows that order, and {@linkplain #deliver() deliver} it once the
+ * lock is released, so no listener runs under it.
+ */
+public final class ChangeLog {
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeLog.class.getName());
+
+    /** A registered listener; closing it stops delivery. */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final int retention;
+    private final ArrayDeque<UserChange> recent = new ArrayDeque<>();
+    private final ArrayDeque<UserChange> undelivered = new ArrayDeque<>();
+    private final List<Consumer<UserChange>> listeners = new ArrayList<>();
+    // Held while listeners run, before the monitor, so they see one change at a time
+    private final Object delivery = new Object();
+    private long seq;
+    private long delivered;
+
+    /**
+     * @param retention number of changes kept for subscribers that resume
+     */
+    public ChangeLog(int retention) {
+        if (retention <= 0) {
+            throw new IllegalArgumentException("Retention must be positive");
+        }
+        this.retention = retention;
+    }
+
+    /** @return sequence number of the latest change, 0 before the first one */
+    public synchronized long lastSeq() {
+        return seq;
+    }
+
+    /**
+     * Deliver every retained change after {@code after}, then every new change, to {@code listener}.
+     * Pass {@link #lastSeq()} to only receive new changes.
+     */
+    public Subscription subscribe(long after, Consumer<UserChange> listener) {
+        synchronized (delivery) {
+            List<UserChange> missed;
+            synchronized (this) {
+                // Queued changes reach the listener through deliver()
+                missed = since(after, delivered);
+                listeners.add(listener);
+            }
+            for (UserChange change : missed) {
+                listener.accept(change);
+            }
+        }
+        return () -> {
+            synchronized (ChangeLog.this) {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    /**
+     * Poll for changes.
+     *
+     * @return the changes after {@code after} in order, or a single {@link UserChange.Type#RELOADED}
+     *         if some of them are no longer retained
+     */
+    public synchronized List<UserChange> since(long after) {
+        return since(after, seq);
+    }
+
+    // Under the monitor: the changes after {@code after} up to {@code last}
+    private List<UserChange> since(long after, long last) {
+        if (after >= last) {
+            return List.of();
+        }
+        if (recent.isEmpty() || recent.peekFirst().seq() > after + 1) {
+            return List.of(new UserChange(last, UserChange.Type.RELOADED, 0, null, null, null));
+        }
+        List<UserChange> changes = new ArrayList<>((int) (last - after));
+        for (UserChange change : recent) {
+            if (change.seq() > after && change.seq() <= last) {
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    public void userAdded(Users.User user) {
+        publish(UserChange.Type.USER_ADDED, user.id(), null, null, user);
+    }
+
+    public void userRemoved(long userId) {
+        publish(UserChange.Type.USER_REMOVED, userId, null, null, null);
+    }
+
+    /**
+     * Publish what differs between two versions of a user: opened and closed accounts, a posting
+     * for every transaction appended to an account's history, an account update for any other
+     * change to an account, a role change, and an update for any other field.
+     */
+    public void userReplaced(Users.User old, Users.User updated) {
+        synchronized (this) {
+            Set<String> before = accountNumbers(old);
+            Set<String> after = accountNumbers(updated);
+            for (String number : after) {
+                if (!before.contains(number)) {
+                    append(UserChange.Type.ACCOUNT_OPENED, updated.id(), number, null, updated);
+                }
+            }
+            for (String number : before) {
+                if (!after.contains(number)) {
+                    append(UserChange.Type.ACCOUNT_CLOSED, updated.id(), number, null, updated);
+                }
+            }
+            Map<String, Users.Account> kept = accounts(old);
+            for (Users.Account account : updated.accounts() == null ? List.<Users.Account>of() : updated.accounts()) {
+                Users.Account was = kept.get(account.number());
+                if (was != null && was != account) {
+                    accountChanged(was, account, updated);
+                }
+            }
+            if (!Objects.equals(old.role(), updated.role())) {
+                append(UserChange.Type.ROLE_CHANGED, updated.id(), null, null, updated);
+            }
+            if (!Objects.equals(old.username(), updated.username())
+                    || !Objects.equals(old.name(), updated.name())
+                    || !Objects.equals(old.email(), updated.email())
+                    || !Objects.equals(old.password(), updated.password())) {
+                append(UserChange.Type.USER_UPDATED, updated.id(), null, null, updated);
+            }
+        }
+        deliver();
+    }
+
+    // Under the monitor
+    private void accountChanged(Users.Account was, Users.Account now, Users.User updated) {
+        List<Users.Transaction> before = was.transactions() == null ? List.of() : was.transactions();
+        List<Users.Transaction> after = now.transactions() == null ? List.of() : now.transactions();
+        if (Objects.equals(was.type(), now.type()) && startsWith(after, before)) {
+            for (int i = before.size(); i < after.size(); i++) {
+                append(UserChange.Type.TRANSACTION_POSTED, updated.id(), now.number(), after.get(i), updated);
+            }
+            if (after.size() > before.size() || was.balanceCents() == now.balanceCents()) {
+                return;
+            }
+        }
+        append(UserChange.Type.ACCOUNT_UPDATED, updated.id(), now.number(), null, updated);
+    }
+
+    // Shared rows are usually the same objects, so most of them are never compared field by field
+    private static boolean startsWith(List<Users.Transaction> history, List<Users.Transaction> prefix) {
+        if (history == prefix) {
+            return true;
+        }
+        if (history.size() < prefix.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            Users.Transaction a = history.get(i);
+            Users.Transaction b = prefix.get(i);
+            if (a != b && !Objects.equals(a, b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void posted(Users.User user, String account, Users.Transaction tx) {
+        queuePosted(user, account, tx);
+        deliver();
+    }
+
+    /**
+     * Give a posting its sequence number now and deliver it with the next {@link #deliver()}.
+     */
+    public synchronized void queuePosted(Users.User user, String account, Users.Transaction tx) {
+        append(UserChange.Type.TRANSACTION_POSTED, user.id(), account, tx, user);
+    }
+
+    public void reloaded() {
+        publish(UserChange.Type.RELOADED, 0, null, null, null);
+    }
+
+    /**
+     * Hand every queued change to the listeners, in sequence order. Must not be called while
+     * holding a lock a listener may need.
+     */
+    public void deliver() {
+        synchronized (delivery) {
+            while (true) {
+                UserChange change;
+                List<Consumer<UserChange>> targets;
+                synchronized (this) {
+                    change = undelivered.pollFirst();
+                    if (change == null) {
+                        return;
+                    }
+                    delivered = change.seq();
+                    targets = List.copyOf(listeners);
+                }
+                for (Consumer<UserChange> listener : targets) {
+                    try {
+                        listener.accept(change);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Change listener failed on " + change.type() + " #" + change.seq(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void publish(UserChange.Type type, long userId, String account, Users.Transaction tx, Users.User user) {
+        synchronized (this) {
+            append(type, userId, account, tx, user);
+        }
+        deliver();
+    }
+
+    // Under the monitor
+    private void append(UserChange.Type type, long userId, String account, Users.Transaction tx, Users.User user) {
+        UserChange change = new UserChange(++seq, type, userId, account, tx, user);
+        if (recent.size() == retention) {
+            recent.removeFirst();
+        }
+        recent.addLast(change);
+        undelivered.addLast(change);
+    }
+
+    private static Map<String, Users.Account> accounts(Users.User user) {
+        Map<String, Users.Account> accounts = new HashMap<>();
+        if (user.accounts() != null) {
+            for (Users.Account a : user.accounts()) {
+                accounts.put(a.number(), a);
+            }
+        }
+        return accounts;
+    }
+
+    private static Set<String> accountNumbers(Users.User user) {
+        Set<String> numbers = new LinkedHashSet<>();
+        if (user.accounts() != null) {
+            for (Users.Account a : user.accounts()) {
+                numbers.add(a.number());
+            }
+        }
+        return numbers;
+    }
+}
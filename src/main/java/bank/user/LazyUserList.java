@@ -0,0 +1,105 @@
+package bank.user;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * User list backed by a {@link UsersBinarySnapshot}: a user is decoded the first time it is read.
+ * Appending and replacing keep the remaining rows lazy; inserting or removing in the middle
+ * decodes everything first, because it shifts the slots of the rows behind it.
+ * Access is synchronized so a row is never decoded into two different objects.
+ */
+final class LazyUserList extends AbstractList<Users.User> implements RandomAccess {
+
+    private final UsersBinarySnapshot snapshot;
+    private final ArrayList<Users.User> users;
+    private Map<Long, Integer> slots;
+
+    LazyUserList(UsersBinarySnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.users = new ArrayList<>(Collections.nCopies(snapshot.userCount(), null));
+        this.slots = snapshot.slots();
+    }
+
+    @Override
+    public synchronized Users.User get(int index) {
+        Users.User u = users.get(index);
+        if (u == null) {
+            u = snapshot.decode(index);
+            users.set(index, u);
+        }
+        return u;
+    }
+
+    @Override
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public synchronized Users.User set(int index, Users.User user) {
+        Users.User old = get(index);
+        users.set(index, user);
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, Users.User user) {
+        if (index != users.size()) {
+            materialize();
+        }
+        modCount++;
+        users.add(index, user);
+    }
+
+    @Override
+    public synchronized Users.User remove(int index) {
+        materialize();
+        modCount++;
+        return users.remove(index);
+    }
+
+    @Override
+    public synchronized void clear() {
+        modCount++;
+        users.clear();
+        slots = null;
+    }
+
+    /**
+     * Find a user of the snapshot by id without decoding the others.
+     *
+     * @return the user, or null if it is not part of the list
+     */
+    synchronized Users.User find(long id) {
+        if (slots != null) {
+            Integer slot = slots.get(id);
+            if (slot != null) {
+                Users.User u = get(slot);
+                if (u.id() == id) {
+                    return u;
+                }
+            }
+        }
+        for (int i = 0; i < users.size(); i++) {
+            Users.User u = users.get(i);
+            if (u != null && u.id() == id) {
+                return u;
+            }
+        }
+        return null;
+    }
+
+    private void materialize() {
+        if (slots == null) {
+            return;
+        }
+        for (int i = 0; i < users.size(); i++) {
+            get(i);
+        }
+        slots = null;
+    }
+}
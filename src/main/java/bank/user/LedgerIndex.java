@@ -0,0 +1,55 @@
+package bank.user;
+
+import java.util.List;
+
+/**
+ * The sorted secondary indexes of the ledger: accounts by balance, transactions by date and
+ * by amount. Money is indexed in cents. {@link Users} keeps them current on every change once
+ * they were built.
+ */
+final class LedgerIndex {
+
+    final RangeIndex<Users.Account> balances = new RangeIndex<>();
+    final RangeIndex<Users.Transaction> dates = new RangeIndex<>();
+    final RangeIndex<Users.Transaction> amounts = new RangeIndex<>();
+
+    void add(Users.User user) {
+        if (user == null || user.accounts() == null) {
+            return;
+        }
+        for (Users.Account a : user.accounts()) {
+            balances.add(a, a.balanceCents());
+            for (Users.Transaction t : transactions(a)) {
+                dates.add(t, t.date());
+                amounts.add(t, t.amountCents());
+            }
+        }
+    }
+
+    void remove(Users.User user) {
+        if (user == null || user.accounts() == null) {
+            return;
+        }
+        for (Users.Account a : user.accounts()) {
+            balances.remove(a);
+            for (Users.Transaction t : transactions(a)) {
+                dates.remove(t);
+                amounts.remove(t);
+            }
+        }
+    }
+
+    /** An account was replaced by a copy with a new balance and {@code tx} appended. */
+    void posted(Users.Account old, Users.Account updated, Users.Transaction tx) {
+        balances.remove(old);
+        balances.add(updated, updated.balanceCents());
+        if (tx != null) {
+            dates.add(tx, tx.date());
+            amounts.add(tx, tx.amountCents());
+        }
+    }
+
+    private static List<Users.Transaction> transactions(Users.Account a) {
+        return a.transactions() == null ? List.of() : a.transactions();
+    }
+}
@@ -0,0 +1,138 @@
+package bank.user;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single background thread that performs every disk write of {@link Users}, so callers on the
+ * JavaFX thread never wait for I/O. Each request bumps a dirty version; writes run in submission
+ * order and advance the persisted version when they finish.
+ * Snapshot requests made within the group commit window share one physical write.
+ */
+final class PersistenceWriter {
+
+    /** A disk write run on the writer thread. */
+    interface Write {
+        void run() throws IOException;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(PersistenceWriter.class.getName());
+
+    private final ScheduledExecutorService executor;
+    private volatile Thread thread;
+    private final AtomicLong dirtyVersion = new AtomicLong();
+    private final AtomicLong persistedVersion = new AtomicLong();
+    private volatile long windowMillis;
+
+    private Write pendingSnapshot;
+    private CompletableFuture<Void> pendingFuture;
+
+    PersistenceWriter(String name, long windowMillis) {
+        this.windowMillis = windowMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            thread = t;
+            return t;
+        });
+    }
+
+    void setWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Group commit window must not be negative");
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    long dirtyVersion() {
+        return dirtyVersion.get();
+    }
+
+    long persistedVersion() {
+        return persistedVersion.get();
+    }
+
+    /**
+     * Queue a write behind all earlier ones.
+     *
+     * @return a future completed once the write is done
+     */
+    CompletableFuture<Void> submit(Write write) {
+        long version = dirtyVersion.incrementAndGet();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        executor.execute(() -> run(write, version, done));
+        return done;
+    }
+
+    /**
+     * Request a full snapshot write. The first request of a window schedules it; later requests
+     * of the same window share its future, and the latest request decides what is written.
+     */
+    synchronized CompletableFuture<Void> requestSnapshot(Write write) {
+        dirtyVersion.incrementAndGet();
+        pendingSnapshot = write;
+        if (pendingFuture == null) {
+            pendingFuture = new CompletableFuture<>();
+            executor.schedule(this::runSnapshot, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return pendingFuture;
+    }
+
+    /**
+     * Block until every write requested so far has finished. A snapshot still waiting for its
+     * window is written right away. Does nothing when called from a write itself.
+     */
+    void flush() {
+        if (Thread.currentThread() == thread || persistedVersion.get() >= dirtyVersion.get()) {
+            return;
+        }
+        synchronized (this) {
+            if (pendingFuture != null) {
+                executor.execute(this::runSnapshot);
+            }
+        }
+        try {
+            executor.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void runSnapshot() {
+        Write write;
+        CompletableFuture<Void> done;
+        long version;
+        synchronized (this) {
+            if (pendingFuture == null) {
+                return;
+            }
+            write = pendingSnapshot;
+            done = pendingFuture;
+            // Everything up to this version is in memory and will be copied by the write
+            version = dirtyVersion.get();
+            pendingSnapshot = null;
+            pendingFuture = null;
+        }
+        run(write, version, done);
+    }
+
+    private void run(Write write, long version, CompletableFuture<Void> done) {
+        try {
+            write.run();
+            persistedVersion.accumulateAndGet(version, Math::max);
+            done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Background write failed", e);
+            done.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package bank.user;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list that is changed by making a new version: {@link #plus} and {@link #with}
+ * return a new vector and leave this one as it was. Versions share everything but the path to
+ * the changed element, a 32-way tree of at most a few levels, so a change copies a handful of
+ * small arrays however long the list is. Appends go to a tail block first and cost amortized
+ * constant time.
+ * <p>
+ * The list methods that would change it throw {@link UnsupportedOperationException}.
+ *
+ * @param <T> the element type
+ */
+final class PersistentVector<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, new Object[0], new Object[0]);
+
+    private final int size;
+    private final int shift;
+    // Inner nodes hold Object[] children, leaves hold the elements; the last block is the tail
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    /** A vector of the items, filled a block at a time. */
+    static <T> PersistentVector<T> of(Collection<? extends T> items) {
+        PersistentVector<T> v = empty();
+        Object[] block = new Object[WIDTH];
+        int n = 0;
+        for (T item : items) {
+            block[n++] = item;
+            if (n == WIDTH) {
+                v = v.size == 0 ? new PersistentVector<>(WIDTH, BITS, v.root, block) : v.pushed(block, WIDTH);
+                block = new Object[WIDTH];
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            Object[] rest = Arrays.copyOf(block, n);
+            v = v.size == 0 ? new PersistentVector<>(n, BITS, v.root, rest) : v.pushed(rest, n);
+        }
+        return v;
+    }
+
+    /**
+     * The list itself if it is a vector already, otherwise a vector copy of it; null gives an
+     * empty vector. After the first copy, appending to a history costs no more than the tail.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> from(List<? extends T> items) {
+        if (items instanceof PersistentVector<?> v) {
+            return (PersistentVector<T>) v;
+        }
+        return items == null ? empty() : of(items);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) blockFor(index)[index & MASK];
+    }
+
+    /** A new vector with the item appended. */
+    PersistentVector<T> plus(T item) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = item;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        return pushed(new Object[] {item}, 1);
+    }
+
+    // The tail is full: it goes into the tree and newTail, holding the next items, replaces it
+    private PersistentVector<T> pushed(Object[] newTail, int added) {
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[] {root, pathTo(shift, tail)};
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + added, newShift, newRoot, newTail);
+    }
+
+    /** A new vector with the item at the index replaced. */
+    PersistentVector<T> with(int index, T item) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = item;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, item), tail);
+    }
+
+    /**
+     * A new vector without the item at the index. Unlike the other changes this one copies the
+     * elements after the index, as they all move.
+     */
+    PersistentVector<T> without(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        PersistentVector<T> v = empty();
+        for (int i = 0; i < size; i++) {
+            if (i != index) {
+                v = v.plus(get(i));
+            }
+        }
+        return v;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int i;
+            private Object[] block;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (i >= size) {
+                    throw new NoSuchElementException();
+                }
+                // One tree walk per block instead of per element
+                if ((i & MASK) == 0 || block == null) {
+                    block = blockFor(i);
+                }
+                return (T) block[i++ & MASK];
+            }
+        };
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] blockFor(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int sub = ((size - 1) >>> level) & MASK;
+        Object[] node = Arrays.copyOf(parent, sub + 1);
+        Object[] insert;
+        if (level == BITS) {
+            insert = tailNode;
+        } else {
+            Object[] child = sub < parent.length ? (Object[]) parent[sub] : null;
+            insert = child != null ? pushTail(level - BITS, child, tailNode) : pathTo(level - BITS, tailNode);
+        }
+        node[sub] = insert;
+        return node;
+    }
+
+    private static Object[] pathTo(int level, Object[] node) {
+        return level == 0 ? node : new Object[] {pathTo(level - BITS, node)};
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object item) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = item;
+        } else {
+            int sub = (index >>> level) & MASK;
+            copy[sub] = assoc(level - BITS, (Object[]) node[sub], index, item);
+        }
+        return copy;
+    }
+}
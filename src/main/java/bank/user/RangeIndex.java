@@ -0,0 +1,55 @@
+package bank.user;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rows sorted by one whole-number field (a date, cents), so a range is found in O(log n + k). Rows are told apart by
+ * identity: two equal transactions are two entries, and removing a row needs no old value.
+ */
+final class RangeIndex<T> {
+
+    // seq breaks ties between equal values in the order the rows were added
+    private record Key(long value, long seq) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key o) {
+            int c = Long.compare(value, o.value);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final TreeMap<Key, T> sorted = new TreeMap<>();
+    private final Map<T, Key> keys = new IdentityHashMap<>();
+    private long seq;
+
+    void add(T row, long value) {
+        Key key = new Key(value, ++seq);
+        if (keys.putIfAbsent(row, key) == null) {
+            sorted.put(key, row);
+        }
+    }
+
+    void remove(T row) {
+        Key key = keys.remove(row);
+        if (key != null) {
+            sorted.remove(key);
+        }
+    }
+
+    int size() {
+        return sorted.size();
+    }
+
+    /** Rows with a value in the range, in ascending order of value. */
+    List<T> range(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        Key low = new Key(from, fromInclusive ? Long.MIN_VALUE : Long.MAX_VALUE);
+        Key high = new Key(to, toInclusive ? Long.MAX_VALUE : Long.MIN_VALUE);
+        if (low.compareTo(high) > 0) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(sorted.subMap(low, true, high, true).values());
+    }
+}
@@ -2,6 +2,7 @@ package bank.user;
 import java.util.ArrayList;
 import java.util.List;
 
+import bank.Money;
 import bank.account.Account;
 import bank.utils.InternalLogger;
 
@@ -29,18 +30,8 @@ public class Teller extends User {
     }
 
     public void openNewAccount(long customerId, Account account) {
-        Users.load();
-
-        List<Users.User> users = Users.get();
-        Users.User oldUser = null;
-
-        // Find the user
-        for (Users.User u : users) {
-            if (u.id() == customerId) {
-                oldUser = u;
-                break;
-            }
-        }
+        // Memory holds every change made so far; re-reading the files would only block the caller
+        Users.User oldUser = Users.get(customerId);
 
         if (oldUser == null) {
             throw new IllegalArgumentException("User with ID " + customerId + " not found");
@@ -56,7 +47,7 @@ public class Teller extends User {
             txList = account.getTransactions().stream()
                     .map(t -> new Users.Transaction(
                             t.getDate().getTime(), 
-                            t.getAmount(),
+                            Money.cents(t.getAmount()),
                             t.getType(),
                             "0",
                             accountNum,
@@ -71,7 +62,7 @@ public class Teller extends User {
         Users.Account newAccount = new Users.Account(
                 account.getAccountNumber(),
                 account.getAccountType(),
-                account.getBalance(),
+                Money.cents(account.getBalance()),
                 txList
         );
 
@@ -90,25 +81,13 @@ public class Teller extends User {
                 updatedAccounts
         );
 
-        // Remove the old user and add the updated one
-        users.remove(oldUser);
-        users.add(updatedUser);
-
-        Users.save();
+        // Replace the old user in place; the write happens in the background
+        Users.replace(updatedUser);
+        Users.saveAsync();
     }
 
     public void closeAccount(long userId, String accountNumber) {
-        Users.load();
-        List<Users.User> users = Users.get();
-        Users.User oldUser = null;
-
-        // Find the user
-        for (Users.User u : users) {
-            if (u.id() == userId) {
-                oldUser = u;
-                break;
-            }
-        }
+        Users.User oldUser = Users.get(userId);
 
         if (oldUser == null) {
             throw new IllegalArgumentException("User with ID " + userId + " not found");
@@ -124,7 +103,7 @@ public class Teller extends User {
 
         // If no accounts left, remove the user entirely
         if (updatedAccounts.isEmpty()) {
-            users.remove(oldUser);
+            Users.remove(userId);
             logger.info("User " + userId + " removed (no accounts remaining)");
         } else {
             // Create new User record with updated accounts
@@ -139,11 +118,10 @@ public class Teller extends User {
             );
 
             // Replace old user with updated user
-            users.remove(oldUser);
-            users.add(updatedUser);
+            Users.replace(updatedUser);
             logger.info("Account " + accountNumber + " closed for user " + userId);
         }
 
-        Users.save();
+        Users.saveAsync();
     }
 }
@@ -0,0 +1,249 @@
+package bank.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every transaction of one {@link Users.Snapshot} laid out by column, for scans that only need a
+ * few fields. Dates, amounts in cents and recipient ids are {@code long[]} columns; account
+ * numbers and recipient names are ids into one dictionary shared by all versions. Rows are in
+ * storage order (user, account, transaction) in chunks of about {@link #CHUNK_ROWS} rows that are
+ * cut at user boundaries, so a scan walks a handful of flat arrays instead of following user,
+ * account and transaction references.
+ * <p>
+ * The columns of a later snapshot are made from those of an earlier one: a chunk whose users are
+ * still the same objects is shared, and only the chunks holding a changed user are built again.
+ * Postings don't touch the columns; the next scan brings them up to date. Chunks are never
+ * changed once built, so a scan needs no lock.
+ */
+public final class TransactionColumns {
+
+    public static final int CHUNK_ROWS = 1 << 14;
+
+    // Ids are never reused, so a compiled condition can hold on to one
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static String[] strings = new String[64];
+    private static int stringCount;
+
+    /**
+     * The rows of the users in slots {@code [firstSlot, firstSlot + users.length)}. The arrays are
+     * shared, not copied: read them, don't write them.
+     */
+    public static final class Chunk {
+        private final int firstSlot;
+        private final Users.User[] users;
+        private final long[] dates;
+        private final long[] amounts;
+        private final long[] recipients;
+        private final int[] accounts;
+        private final int[] toAccounts;
+        private final int[] fromAccounts;
+        private final int[] recipientNames;
+        private final Users.Transaction[] rows;
+
+        private Chunk(int firstSlot, Users.User[] users, int size) {
+            this.firstSlot = firstSlot;
+            this.users = users;
+            this.dates = new long[size];
+            this.amounts = new long[size];
+            this.recipients = new long[size];
+            this.accounts = new int[size];
+            this.toAccounts = new int[size];
+            this.fromAccounts = new int[size];
+            this.recipientNames = new int[size];
+            this.rows = new Users.Transaction[size];
+        }
+
+        public int size() { return rows.length; }
+        /** Dates as {@code yyyymmdd}. */
+        public long[] dates() { return dates; }
+        /** Signed amounts in cents. */
+        public long[] amounts() { return amounts; }
+        public long[] recipients() { return recipients; }
+        /** Dictionary id of the account whose history holds the row. */
+        public int[] accounts() { return accounts; }
+        public int[] toAccounts() { return toAccounts; }
+        public int[] fromAccounts() { return fromAccounts; }
+        public int[] recipientNames() { return recipientNames; }
+
+        /** The transaction record of a row, for the fields that have no column. */
+        public Users.Transaction row(int i) {
+            return rows[i];
+        }
+
+        private boolean holds(List<Users.User> snapshot) {
+            if (firstSlot + users.length > snapshot.size()) {
+                return false;
+            }
+            for (int i = 0; i < users.length; i++) {
+                if (snapshot.get(firstSlot + i) != users[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Users.Snapshot snapshot;
+    private final List<Chunk> chunks;
+    private final int size;
+    private final int rebuilt;
+
+    private TransactionColumns(Users.Snapshot snapshot, List<Chunk> chunks, int rebuilt) {
+        this.snapshot = snapshot;
+        this.chunks = chunks;
+        this.size = chunks.stream().mapToInt(Chunk::size).sum();
+        this.rebuilt = rebuilt;
+    }
+
+    /**
+     * Lay out the transactions of {@code snapshot}, sharing the chunks of {@code previous} whose
+     * users didn't change.
+     *
+     * @param previous columns of an earlier snapshot, or null
+     */
+    static TransactionColumns of(Users.Snapshot snapshot, TransactionColumns previous) {
+        List<Users.User> users = snapshot.users();
+        List<Chunk> chunks = new ArrayList<>();
+        int rebuilt = 0;
+        int slot = 0;
+        if (previous != null) {
+            for (Chunk old : previous.chunks) {
+                int end = old.firstSlot + old.users.length;
+                if (end > users.size()) {
+                    break;
+                }
+                if (old.holds(users)) {
+                    chunks.add(old);
+                } else {
+                    // Keep the slot range, so the chunks behind it still line up
+                    rebuilt += cut(users, old.firstSlot, end, chunks);
+                }
+                slot = end;
+            }
+        }
+        rebuilt += cut(users, slot, users.size(), chunks);
+        return new TransactionColumns(snapshot, List.copyOf(chunks), rebuilt);
+    }
+
+    /** The snapshot whose transactions these are. */
+    public Users.Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Rows in all chunks. */
+    public int size() {
+        return size;
+    }
+
+    public int chunkCount() {
+        return chunks.size();
+    }
+
+    public Chunk chunk(int i) {
+        return chunks.get(i);
+    }
+
+    /** Chunks built for this snapshot rather than shared with the previous one. */
+    int rebuilt() {
+        return rebuilt;
+    }
+
+    /** The string with this dictionary id; null stands for a missing value. */
+    public static synchronized String string(int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    /**
+     * @return the dictionary id of the string, or -1 if no row held it yet; compare ids instead
+     *         of strings inside a scan
+     */
+    public static int idOf(String s) {
+        Integer id = s == null ? null : IDS.get(s);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * The dictionary id of the string, adding it if no row held it yet: the id a row holding it
+     * will have, now or after a later posting.
+     */
+    public static int intern(String s) {
+        int id = idOf(s);
+        return id >= 0 || s == null ? id : encode(s);
+    }
+
+    private static synchronized int encode(String s) {
+        Integer id = IDS.get(s);
+        if (id == null) {
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, 2 * stringCount);
+            }
+            id = stringCount;
+            strings[stringCount++] = s;
+            IDS.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * Build the users in slots {@code [from, to)} into chunks of about {@link #CHUNK_ROWS} rows.
+     *
+     * @return the number of chunks built
+     */
+    private static int cut(List<Users.User> users, int from, int to, List<Chunk> out) {
+        int built = 0;
+        while (from < to) {
+            int end = from;
+            long rows = 0;
+            while (end < to && (end == from || rows < CHUNK_ROWS)) {
+                rows += rowCount(users.get(end));
+                end++;
+            }
+            out.add(build(users, from, end, Math.toIntExact(rows)));
+            built++;
+            from = end;
+        }
+        return built;
+    }
+
+    private static Chunk build(List<Users.User> users, int from, int to, int size) {
+        Chunk c = new Chunk(from, users.subList(from, to).toArray(new Users.User[0]), size);
+        int row = 0;
+        for (Users.User u : c.users) {
+            if (u.accounts() == null) {
+                continue;
+            }
+            for (Users.Account a : u.accounts()) {
+                if (a.transactions() == null) {
+                    continue;
+                }
+                int account = intern(a.number());
+                for (Users.Transaction t : a.transactions()) {
+                    c.dates[row] = t.date();
+                    c.amounts[row] = t.amountCents();
+                    c.recipients[row] = t.recipient_id();
+                    c.accounts[row] = account;
+                    c.toAccounts[row] = intern(t.to_account());
+                    c.fromAccounts[row] = intern(t.from_account());
+                    c.recipientNames[row] = intern(t.recipient_name());
+                    c.rows[row] = t;
+                    row++;
+                }
+            }
+        }
+        return c;
+    }
+
+    private static long rowCount(Users.User u) {
+        long n = 0;
+        if (u.accounts() != null) {
+            for (Users.Account a : u.accounts()) {
+                n += a.transactions() == null ? 0 : a.transactions().size();
+            }
+        }
+        return n;
+    }
+}
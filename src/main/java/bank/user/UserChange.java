@@ -0,0 +1,35 @@
+package bank.user;
+
+/**
+ * One change to the users, as published by a {@link ChangeLog}.
+ *
+ * @param seq position in the change stream, strictly increasing
+ * @param type what happened
+ * @param userId the user concerned, or 0 for {@link Type#RELOADED}
+ * @param account account number for account and transaction events, otherwise null
+ * @param tx the posted transaction for {@link Type#TRANSACTION_POSTED}, otherwise null
+ * @param user the user after the change; null for {@link Type#USER_REMOVED} and {@link Type#RELOADED}
+ */
+public record UserChange(long seq, Type type, long userId, String account, Users.Transaction tx, Users.User user) {
+
+    public enum Type {
+        USER_ADDED,
+        /** Name, username, email or password changed. */
+        USER_UPDATED,
+        ROLE_CHANGED,
+        USER_REMOVED,
+        ACCOUNT_OPENED,
+        ACCOUNT_CLOSED,
+        /**
+         * An account's type, balance or history changed other than by appending transactions,
+         * e.g. a corrected row.
+         */
+        ACCOUNT_UPDATED,
+        TRANSACTION_POSTED,
+        /**
+         * The whole state was replaced (load, reset, import), or the subscriber resumed from a
+         * sequence number that is no longer retained. Subscribers rebuild from scratch.
+         */
+        RELOADED
+    }
+}
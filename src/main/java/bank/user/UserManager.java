@@ -1,5 +1,6 @@
 package bank.user;
 
+import bank.Money;
 import bank.account.Account;
 import bank.account.Card;
 import bank.account.Check;
@@ -111,16 +112,16 @@ public class UserManager {
         Account account;
         switch (pAccount.type()) {
             case "Checking":
-                account = new Check(pAccount.number(), pAccount.balance(), "Active", customer);
+                account = new Check(pAccount.number(), Money.amount(pAccount.balanceCents()), "Active", customer);
                 break;
             case "Savings":
-                account = new Saving(pAccount.number(), pAccount.balance(), "Active", customer);
+                account = new Saving(pAccount.number(), Money.amount(pAccount.balanceCents()), "Active", customer);
                 break;
             case "Card":
-                account = new Card(pAccount.number(), pAccount.balance(), "Active", customer);
+                account = new Card(pAccount.number(), Money.amount(pAccount.balanceCents()), "Active", customer);
                 break;
             default:
-                account = new Check(pAccount.number(), pAccount.balance(), "Active", customer);
+                account = new Check(pAccount.number(), Money.amount(pAccount.balanceCents()), "Active", customer);
         }
 
         // Convert and add transactions
@@ -147,13 +148,13 @@ public class UserManager {
         java.util.Date date = cal.getTime();
 
         // Determine transaction type and recipient based on amount
-        String type = pTrans.amount() >= 0 ? "Deposit" : "Withdrawal";
+        String type = pTrans.amountCents() >= 0 ? "Deposit" : "Withdrawal";
         String recipient = pTrans.recipient_name();
 
         return new bank.transaction.Transaction(
             type,
             "Completed",
-            pTrans.amount(),
+            Money.amount(pTrans.amountCents()),
             recipient,
             account,
             date
@@ -167,7 +168,7 @@ public class UserManager {
             pAccounts.add(new Users.Account(
                     a.getAccountNumber(),
                     a.getAccountType(),
-                    a.getBalance(),
+                    Money.cents(a.getBalance()),
                     new ArrayList<>()
             ));
         }
@@ -337,9 +338,9 @@ public class UserManager {
         List<Users.Account> updatedAccounts = user.accounts().stream()
                 .map(a -> {
                     if (Objects.equals(a.number(), accountNumber)) {
-                        List<Users.Transaction> updatedTxs = new ArrayList<>(a.transactions());
-                        updatedTxs.add(tx);
-                        return new Users.Account(a.number(), a.type(), a.balance(), updatedTxs);
+                        // Shares the history with the old account instead of copying it
+                        List<Users.Transaction> updatedTxs = PersistentVector.from(a.transactions()).plus(tx);
+                        return new Users.Account(a.number(), a.type(), a.balanceCents(), updatedTxs);
                     } else {
                         return a;
                     }
@@ -0,0 +1,240 @@
+package bank.user;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Case-insensitive "name or role contains" search over users, on an n-gram index: every
+ * substring of one to three characters of a user's name and role points to that user. A keyword
+ * of up to three characters is answered straight from its posting set; a longer one starts from
+ * the smallest posting set among its trigrams and checks only those users.
+ * <p>
+ * The index is built once from a {@link Users#snapshot() snapshot} and then follows the change
+ * stream of {@link Users}, so it stays current without being rebuilt. Every user it holds is a
+ * snapshot record, never one a caller may still change. Results come in the order the users were
+ * first indexed, which is the order of the user list.
+ */
+public final class UserSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private static UserSearchIndex shared;
+
+    private record Entry(Users.User user, String name, String role, long order) {
+        boolean matches(String keyword) {
+            return name.contains(keyword) || role.contains(keyword);
+        }
+    }
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    private long order;
+    private long version;
+
+    UserSearchIndex() {}
+
+    /** The index over {@link Users}, built on first use and kept current by its change events. */
+    public static UserSearchIndex forUsers() {
+        return forUsers(Users.snapshot());
+    }
+
+    /**
+     * The index over {@link Users}, built on first use from {@code snapshot}, e.g. the one a
+     * screen lists, so the list and the results share their user records.
+     */
+    public static synchronized UserSearchIndex forUsers(Users.Snapshot snapshot) {
+        if (shared == null) {
+            UserSearchIndex index = new UserSearchIndex();
+            long seq = Users.changes().lastSeq();
+            // A snapshot older than seq may miss changes the subscription won't replay
+            Users.Snapshot current = Users.snapshot();
+            index.rebuild(current.version() == snapshot.version() ? snapshot : current);
+            // Replays whatever changed while building; applying a change twice is harmless
+            Users.changes().subscribe(seq, index::apply);
+            shared = index;
+        }
+        return shared;
+    }
+
+    /**
+     * @return the users whose name or role contains the keyword, ignoring case; everyone for a
+     *         blank keyword
+     */
+    public List<Users.User> filter(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            // Already in list order; nothing to look up or sort
+            return new ArrayList<>(Users.snapshot().users());
+        }
+        return find(keyword);
+    }
+
+    private synchronized List<Users.User> find(String keyword) {
+        String key = keyword.toLowerCase();
+        if (key.length() <= GRAM) {
+            Set<Long> ids = postings.getOrDefault(key, Set.of());
+            List<Entry> found = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                found.add(entries.get(id));
+            }
+            return sorted(found);
+        }
+        Set<Long> smallest = null;
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            Set<Long> ids = postings.get(key.substring(i, i + GRAM));
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            if (smallest == null || ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+        List<Entry> found = new ArrayList<>();
+        for (Long id : smallest) {
+            Entry e = entries.get(id);
+            if (e.matches(key)) {
+                found.add(e);
+            }
+        }
+        return sorted(found);
+    }
+
+    /**
+     * A search box: each call narrows the previous result when the keyword only got longer,
+     * which is what typing does, and goes to the index otherwise.
+     */
+    public Session session() {
+        return new Session();
+    }
+
+    public final class Session {
+
+        private String lastKey;
+        private List<Users.User> last;
+        private long lastVersion;
+
+        private Session() {}
+
+        public List<Users.User> filter(String keyword) {
+            String key = keyword == null ? "" : keyword.toLowerCase();
+            if (key.isBlank()) {
+                lastKey = key;
+                last = null;
+                return UserSearchIndex.this.filter(keyword);
+            }
+            List<Users.User> result;
+            synchronized (UserSearchIndex.this) {
+                // Only while nothing changed: a user added since could match the longer keyword
+                if (last != null && lastVersion == version && key.contains(lastKey)) {
+                    result = new ArrayList<>();
+                    for (Users.User u : last) {
+                        Entry e = entries.get(u.id());
+                        if (e != null && e.matches(key)) {
+                            result.add(e.user());
+                        }
+                    }
+                } else {
+                    result = find(keyword);
+                }
+                lastVersion = version;
+            }
+            lastKey = key;
+            last = result;
+            return result;
+        }
+    }
+
+    synchronized void rebuild(Users.Snapshot snapshot) {
+        version++;
+        entries.clear();
+        postings.clear();
+        for (Users.User u : snapshot.users()) {
+            put(u);
+        }
+    }
+
+    synchronized void apply(UserChange change) {
+        version++;
+        switch (change.type()) {
+            case USER_REMOVED -> remove(change.userId());
+            case RELOADED -> rebuild(Users.snapshot());
+            default -> {
+                if (change.user() != null) {
+                    put(change.user());
+                }
+            }
+        }
+    }
+
+    private void put(Users.User user) {
+        String name = lower(user.name());
+        String role = lower(user.role());
+        Entry old = entries.get(user.id());
+        if (old != null && old.name().equals(name) && old.role().equals(role)) {
+            // Only the record changed, e.g. a posting; the grams are the same
+            entries.put(user.id(), new Entry(user, name, role, old.order()));
+            return;
+        }
+        if (old != null) {
+            unpost(old);
+        }
+        Entry e = new Entry(user, name, role, old != null ? old.order() : order++);
+        entries.put(user.id(), e);
+        for (String gram : grams(e)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(user.id());
+        }
+    }
+
+    private void remove(long id) {
+        Entry old = entries.remove(id);
+        if (old != null) {
+            unpost(old);
+        }
+    }
+
+    private void unpost(Entry e) {
+        for (String gram : grams(e)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(e.user().id());
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(Entry e) {
+        Set<String> grams = new HashSet<>();
+        addGrams(grams, e.name());
+        addGrams(grams, e.role());
+        return grams;
+    }
+
+    private static void addGrams(Set<String> grams, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            for (int n = 1; n <= GRAM && i + n <= s.length(); n++) {
+                grams.add(s.substring(i, i + n));
+            }
+        }
+    }
+
+    private static List<Users.User> sorted(Collection<Entry> found) {
+        List<Entry> list = new ArrayList<>(found);
+        list.sort(Comparator.comparingLong(Entry::order));
+        List<Users.User> users = new ArrayList<>(list.size());
+        for (Entry e : list) {
+            users.add(e.user());
+        }
+        return users;
+    }
+
+    private static String lower(String s) {
+        return s == null ? "" : s.toLowerCase();
+    }
+}
@@ -0,0 +1,57 @@
+package bank.user;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Username to user id. Lookups don't lock, so concurrent logins don't wait on each other or on
+ * writers; changes are made by the owner of the index under its own lock.
+ * <p>
+ * A username should belong to one user, but files written by older versions may repeat one.
+ * The index then keeps the first user it was given, like a scan of the list would find, and
+ * reports when that user goes away so the owner can rebuild it from the full list.
+ */
+public final class UsernameIndex {
+
+    private final ConcurrentHashMap<String, Long> ids = new ConcurrentHashMap<>();
+    private boolean repeated;
+
+    /** @return the id of the user with this username, or null */
+    public Long get(String username) {
+        return username == null ? null : ids.get(username);
+    }
+
+    public synchronized void add(Users.User user) {
+        if (user.username() == null) {
+            return;
+        }
+        Long previous = ids.putIfAbsent(user.username(), user.id());
+        if (previous != null && previous != user.id()) {
+            repeated = true;
+        }
+    }
+
+    /**
+     * @return false if another user may hold the same username and the index must be rebuilt
+     */
+    public synchronized boolean remove(Users.User user) {
+        if (user == null || user.username() == null) {
+            return true;
+        }
+        return !(ids.remove(user.username(), user.id()) && repeated);
+    }
+
+    /**
+     * Follow a user from its old version to the new one, which may have another username.
+     *
+     * @return false if the index must be rebuilt, see {@link #remove}
+     */
+    public synchronized boolean replace(Users.User old, Users.User updated) {
+        if (old != null && Objects.equals(old.username(), updated.username())) {
+            return true;
+        }
+        boolean current = remove(old);
+        add(updated);
+        return current;
+    }
+}
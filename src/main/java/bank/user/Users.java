@@ -1,34 +1,228 @@
 package bank.user;
 
+import bank.Money;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Users {
 
-    private static final Gson GSON = new GsonBuilder()
-            .serializeNulls().setPrettyPrinting().create();
-
     private static final Logger LOGGER = Logger.getLogger(Users.class.getName());
 
     private static List<User> USERS = new ArrayList<>();
-    private static Map<Long, User> USER_MAP = new HashMap<>();
+    // Concurrent: postings look users up (and a mapped snapshot caches them) in parallel
+    private static Map<Long, User> USER_MAP = new ConcurrentHashMap<>();
+    // Account number -> owner and position in its account list; null until first needed after a load.
+    // Concurrent: postings repair entries without the monitor
+    private static volatile Map<String, AccountRef> ACCOUNT_INDEX = new ConcurrentHashMap<>();
+    // Username to id; read without locking by logins, null until first used after a load
+    private static volatile UsernameIndex USERNAME_INDEX = new UsernameIndex();
+    // Balance, date and amount ranges; null until a range search needs it after a load
+    private static LedgerIndex LEDGER_INDEX = new LedgerIndex();
+    // Published read-only view of the users; null until first asked for after a load
+    private static volatile Snapshot SNAPSHOT = new Snapshot(0, PersistentVector.empty());
+    // User id -> position in USERS and in SNAPSHOT, which are kept in step; null until a posting needs it
+    private static Map<Long, Integer> SNAPSHOT_SLOTS = new HashMap<>();
+    private static long snapshotVersion;
+    // Transactions by column of the last snapshot a scan asked for; postings leave it alone
+    private static TransactionColumns COLUMNS;
+    private static final Object COLUMNS_LOCK = new Object();
 
     private static final Path DATA_JSON = Path.of("data/users.json");
     private static Path jsonFile = DATA_JSON;
 
+    private static UsersJournal journal = new UsersJournal(DATA_JSON);
+    private static boolean journaled = false;
+    private static int checkpointInterval = 1000;
+    private static int compactionThreshold = 4;
+    private static boolean prettyPrinting = true;
+    private static SnapshotFormat snapshotFormat = SnapshotFormat.JSON;
+    private static int shardCount = 64;
+    private static UsersShards shards;
+
+    // Users changed since the last snapshot (for the sharded layout); allDirty when unknown
+    private static Set<Long> dirtyUsers = new HashSet<>();
+    private static boolean allDirty = true;
+
+    private static final PersistenceWriter WRITER = new PersistenceWriter("users-writer", 5);
+    // Writes journaled snapshots, so delta appends on WRITER never wait behind a full snapshot
+    private static final PersistenceWriter COMPACTOR = new PersistenceWriter("users-compactor", 0);
+    private static int journalEntries;
+    private static int sealedDeltas;
+
+    private static final ChangeLog CHANGES = new ChangeLog(10_000);
+
+    // Bumped by every change to what a search over users, accounts or transactions could see,
+    // after the snapshot showing the change was published
+    private static final AtomicLong USER_VERSION = new AtomicLong();
+    private static final AtomicLong ACCOUNT_VERSION = new AtomicLong();
+    private static final AtomicLong TRANSACTION_VERSION = new AtomicLong();
+
+    /*
+     * Locking, always taken in this order:
+     * 1. STRUCTURE: shared by postings, exclusive for adding, replacing or removing users and for
+     *    loading; the only lock that stops every posting.
+     * 2. ACCOUNT_LOCKS: the stripes of the accounts a posting touches, so postings on other
+     *    accounts go ahead in parallel.
+     * 3. The Users.class monitor: held by structural changes and while a lazy index is built
+     *    from the user list; postings never take it.
+     * 4. PUBLISHED or PENDING, never both. PUBLISHED guards the published snapshot, its slot map
+     *    and the ledger index, which a posting changes in one short step together with the
+     *    account lists, numbering its change events in the same step (the change log's monitor
+     *    comes after PUBLISHED; its listeners only run once PUBLISHED is released). PENDING guards what the next delta or snapshot has to cover: the dirty
+     *    users, the journal counters and the order of the delta appends queued on WRITER.
+     */
+    private static final ReadWriteLock STRUCTURE = new ReentrantReadWriteLock();
+    private static final AccountLocks ACCOUNT_LOCKS = new AccountLocks(1024);
+    private static final Object PUBLISHED = new Object();
+    private static final Object PENDING = new Object();
+
     public static void setJsonFile(Path path) {
+        // Pending writes belong to the previous file
+        flush();
         jsonFile = path;
+        switchJournal();
+    }
+
+    /** On-disk layout of the snapshot that {@link #load()} and {@link #save()} use. */
+    public enum SnapshotFormat {
+        /** The JSON file itself. */
+        JSON,
+        /** A memory-mapped binary file next to the JSON file ({@code users.bin}), decoded lazily. */
+        BINARY,
+        /**
+         * Hash-bucketed JSON shards in a directory next to the JSON file ({@code users/}) with a
+         * {@code manifest.json}; only shards of changed users are rewritten.
+         */
+        SHARDED
+    }
+
+    /**
+     * Choose the snapshot format. In the binary and sharded modes an existing JSON file is
+     * imported on the first load and the new snapshot is written from then on; JSON stays
+     * available through {@link #exportJson(Path)} and {@link #importJson(Path)}.
+     * The sharded mode relies on changes going through the methods of this class
+     * (not through the list returned by {@link #get()}) to know which shards are dirty.
+     */
+    public static void setSnapshotFormat(SnapshotFormat format) {
+        flush();
+        snapshotFormat = format;
+        switchJournal();
+    }
+
+    private static void switchJournal() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close the journal of " + journal.snapshot().toAbsolutePath(), e);
+        }
+        synchronized (PENDING) {
+            journal = new UsersJournal(snapshotFile());
+            journalEntries = 0;
+            sealedDeltas = 0;
+        }
+    }
+
+    /**
+     * @return the file snapshots are written to: the JSON file, or the {@code .bin} file next to it
+     */
+    static Path snapshotFile() {
+        return switch (snapshotFormat) {
+            case JSON -> jsonFile;
+            case BINARY -> jsonFile.resolveSibling(jsonStem() + ".bin");
+            case SHARDED -> shards().manifest();
+        };
+    }
+
+    /**
+     * @param buckets number of shard files of a new sharded layout; an existing manifest keeps its own count
+     */
+    public static void setShardCount(int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        shardCount = buckets;
+        shards = null;
+    }
+
+    private static UsersShards shards() {
+        Path dir = jsonFile.resolveSibling(jsonStem());
+        if (shards == null || !shards.dir().equals(dir)) {
+            shards = new UsersShards(dir, shardCount);
+        }
+        return shards;
+    }
+
+    private static String jsonStem() {
+        String name = jsonFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Switch the journaled persistence mode on or off.
+     * When on, transfers, withdrawals and deposits append a few hundred bytes to a delta segment
+     * next to the snapshot instead of rewriting the whole snapshot; adding, replacing and
+     * removing users is journaled too, so postings to a new account survive a crash before the
+     * next snapshot. Every
+     * {@linkplain #setCheckpointInterval(int) checkpoint interval} the active delta is sealed,
+     * and once {@linkplain #setCompactionThreshold(int) enough} sealed deltas pile up a new base
+     * snapshot is written in the background while postings keep going to the next delta.
+     * {@link #load()} reads the base and replays the deltas after it.
+     */
+    public static void setJournaled(boolean enabled) {
+        // Pending snapshots run on the writer of the previous mode
+        flush();
+        journaled = enabled;
+    }
+
+    /**
+     * @param entries number of journal entries per delta segment
+     */
+    public static void setCheckpointInterval(int entries) {
+        if (entries <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        checkpointInterval = entries;
+    }
+
+    /**
+     * @param deltas number of sealed delta segments that triggers a new base snapshot; recovery
+     *               replays at most this many segments plus the active one
+     */
+    public static void setCompactionThreshold(int deltas) {
+        if (deltas <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive");
+        }
+        compactionThreshold = deltas;
     }
 
     public record User(
@@ -41,16 +235,23 @@ public class Users {
             List<Account> accounts
     ) {}
 
+    /**
+     * The balance is a number of cents, see {@link Money}; it only becomes a decimal in the JSON
+     * files and on the screens.
+     * A posting makes a new account whose history shares all earlier rows with this one's, so
+     * histories are never changed in place and an old record keeps showing its own.
+     */
     public record Account(
             String number,
             String type,
-            double balance,
+            long balanceCents,
             List<Transaction> transactions
     ) {}
 
+    /** The amount is a number of cents, like {@link Account#balanceCents()}. */
     public record Transaction(
             long date,
-            double amount,
+            long amountCents,
             String details,
             String to_account,
             String from_account,
@@ -58,130 +259,1111 @@ public class Users {
             String recipient_name
     ) {}
 
-    public static void load()
+    /**
+     * The users as they were at one moment. Nothing a writer does later shows through: adding,
+     * replacing and removing users and postings each publish a new snapshot that shares all
+     * unchanged users with the previous one, so taking a snapshot costs nothing and a report can
+     * walk it for as long as it likes without holding any lock.
+     * <p>
+     * The users in a snapshot are read-only copies; their account lists can't be changed.
+     */
+    public static final class Snapshot {
+
+        private final long version;
+        private final PersistentVector<User> users;
+
+        private Snapshot(long version, PersistentVector<User> users) {
+            this.version = version;
+            this.users = users;
+        }
+
+        /** Grows with every snapshot published; a later snapshot has a higher version. */
+        public long version() {
+            return version;
+        }
+
+        public List<User> users() {
+            return users;
+        }
+
+        public int size() {
+            return users.size();
+        }
+    }
+
+    /**
+     * Switch between the indented (default) and compact on-disk JSON layout.
+     * Compact files are smaller and faster to write; both layouts load the same way.
+     */
+    public static void setPrettyPrinting(boolean enabled) {
+        prettyPrinting = enabled;
+    }
+
+    /** Changes whenever a user is added, replaced or removed, and on every load. */
+    public static long userVersion() {
+        return USER_VERSION.get();
+    }
+
+    /** Also changes when a posting moves a balance or a user's account list is replaced. */
+    public static long accountVersion() {
+        return ACCOUNT_VERSION.get();
+    }
+
+    /** Changes whenever {@link #accountVersion()} does, every posting adds a transaction. */
+    public static long transactionVersion() {
+        return TRANSACTION_VERSION.get();
+    }
+
+    private static void changedAll() {
+        USER_VERSION.incrementAndGet();
+        ACCOUNT_VERSION.incrementAndGet();
+        TRANSACTION_VERSION.incrementAndGet();
+    }
+
+    /**
+     * Change stream of the in-memory users: every add, replace, remove and posting made through
+     * this class, and a {@link UserChange.Type#RELOADED} whenever the whole state is replaced.
+     */
+    public static ChangeLog changes() {
+        return CHANGES;
+    }
+
+    public static void load() {
+        try (AccountLocks.Held ignored = structural()) {
+            loadState();
+            changedAll();
+            CHANGES.reloaded();
+        }
+    }
+
+    private static void loadState()
     {
-        try (Reader reader = Files.newBufferedReader(jsonFile)) {
-            User[] arr = GSON.fromJson(reader, User[].class);
-            if (arr == null) arr = new User[0];
+        // Re-reading the files is only correct once our own writes have landed
+        flush();
 
-            USERS = new ArrayList<>(List.of(arr));
-            USER_MAP = new HashMap<>();
-            for (User u : USERS) {
-                USER_MAP.put(u.id(), u);
-            }
+        if (snapshotFormat == SnapshotFormat.BINARY && Files.exists(snapshotFile())) {
+            loadBinary();
+            return;
+        }
 
+        if (snapshotFormat == SnapshotFormat.SHARDED && Files.exists(snapshotFile())) {
+            loadShards();
+            return;
+        }
+
+        if (Files.exists(jsonFile)) {
+            JsonSnapshot json = readJsonSnapshot();
             LOGGER.info("Loaded " + USERS.size() + " users from " + jsonFile.toAbsolutePath());
+            if (snapshotFormat != SnapshotFormat.JSON) {
+                // Import: there is no binary or sharded snapshot yet; from now on it is the one that gets loaded
+                replayJsonJournal(json.folded());
+                save();
+            } else {
+                replayJournal(json.folded());
+                if (!json.intact()) {
+                    // Replace the damaged file; the original was copied aside
+                    save();
+                }
+            }
             return;
-        } catch (Exception e) {
-            LOGGER.warning("Could not load from " + jsonFile.toAbsolutePath() + ", trying resources");
         }
 
-        // Fallback: try loading from resources folder
+        // First start: seed the data file from the resources folder
         try (Reader r = new java.io.InputStreamReader(
                 Users.class.getResourceAsStream("/bank/users.json")))
         {
-            if (r != null) {
-                User[] arr = GSON.fromJson(r, User[].class);
-                if (arr != null) {
-                    USERS = new ArrayList<>(List.of(arr));
-                    USER_MAP = new HashMap<>();
-                    for (User u : USERS) {
-                        USER_MAP.put(u.id(), u);
+            readUsers(r);
+            LOGGER.info("Loaded " + USERS.size() + " users from resources");
+            // Save to data folder immediately so future loads use the same file
+            save();
+            return;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Failed to load users from resources", e);
+        }
+
+        // if both fail, start with empty list
+        USERS = new ArrayList<>();
+        USER_MAP = new ConcurrentHashMap<>();
+        ACCOUNT_INDEX = null;
+        USERNAME_INDEX = null;
+        LEDGER_INDEX = null;
+        SNAPSHOT = null;
+        SNAPSHOT_SLOTS = null;
+        LOGGER.warning("Starting with empty user list");
+    }
+
+    /**
+     * Map the binary snapshot. If its header is current and a block checksum fails, the users
+     * whose records lie in the intact blocks in front of the damage are decoded, the deltas are
+     * replayed on top and the damaged file is replaced after copying it aside.
+     *
+     * @throws IllegalStateException if the file can't be read at all; an older snapshot in
+     *         another format is never loaded in its place
+     */
+    private static void loadBinary() {
+        Path file = snapshotFile();
+        try {
+            UsersSnapshotHeader.Header header = UsersSnapshotHeader.read(file);
+            int good = header == null ? 0 : UsersSnapshotHeader.validate(file, header);
+            UsersBinarySnapshot snapshot = UsersBinarySnapshot.open(file);
+            if (header == null || good == header.blocks().size()) {
+                LazyUserList users = new LazyUserList(snapshot);
+                synchronized (Users.class) {
+                    USERS = users;
+                    USER_MAP = new ConcurrentHashMap<>();
+                    ACCOUNT_INDEX = null;
+                    USERNAME_INDEX = null;
+                    LEDGER_INDEX = null;
+                    SNAPSHOT = null;
+                    SNAPSHOT_SLOTS = null;
+                }
+                markAllDirty();
+                LOGGER.info("Mapped " + users.size() + " users from " + file.toAbsolutePath());
+                replayJournal(snapshot.folded());
+                return;
+            }
+
+            LOGGER.severe("Checksum mismatch in block " + good + " of " + header.blocks().size() + " of " + file.toAbsolutePath());
+            int intact = snapshot.usersBefore(good == 0 ? 0 : header.blocks().get(good - 1).end());
+            if (intact < 0) {
+                throw new IOException("The damage reaches into the string table or the index");
+            }
+            preserveDamaged(file);
+            List<User> users = new ArrayList<>(intact);
+            Map<Long, User> userMap = new ConcurrentHashMap<>();
+            for (int slot = 0; slot < intact; slot++) {
+                User u = snapshot.decode(slot);
+                users.add(u);
+                userMap.put(u.id(), u);
+            }
+            synchronized (Users.class) {
+                USERS = users;
+                USER_MAP = userMap;
+                ACCOUNT_INDEX = null;
+                USERNAME_INDEX = null;
+                LEDGER_INDEX = null;
+                SNAPSHOT = null;
+                SNAPSHOT_SLOTS = null;
+            }
+            markAllDirty();
+            LOGGER.severe("Recovered " + intact + " of " + snapshot.userCount() + " users from the intact part of " + file.toAbsolutePath());
+            replayJournal(snapshot.folded());
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Could not load the binary snapshot " + file.toAbsolutePath(), e);
+        }
+        // Replace the damaged file; the original was copied aside
+        save();
+    }
+
+    /**
+     * Load the sharded snapshot. Users of a shard that can't be read in full are lost (those in
+     * front of the damage are kept), the damaged shard files are copied aside, the deltas are
+     * replayed on top and every shard is rewritten.
+     *
+     * @throws IllegalStateException if the manifest can't be read; an older snapshot in another
+     *         format is never loaded in its place
+     */
+    private static void loadShards() {
+        List<Path> damaged = new ArrayList<>();
+        List<User> users;
+        try {
+            users = shards().load(damaged::add);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Could not load the shards in " + shards().dir().toAbsolutePath(), e);
+        }
+        Map<Long, User> userMap = new ConcurrentHashMap<>();
+        for (User u : users) {
+            userMap.put(u.id(), u);
+        }
+        synchronized (Users.class) {
+            USERS = users;
+            USER_MAP = userMap;
+            ACCOUNT_INDEX = null;
+            USERNAME_INDEX = null;
+            LEDGER_INDEX = null;
+            SNAPSHOT = null;
+            SNAPSHOT_SLOTS = null;
+        }
+        synchronized (PENDING) {
+            dirtyUsers = new HashSet<>();
+            allDirty = !damaged.isEmpty();
+        }
+        for (Path shard : damaged) {
+            preserveDamaged(shard);
+        }
+        LOGGER.info("Loaded " + users.size() + " users from shards in " + shards().dir().toAbsolutePath());
+        replayJournal(shards().folded());
+        if (!damaged.isEmpty()) {
+            // Replace the damaged shards; the originals were copied aside
+            save();
+        }
+    }
+
+    /** What {@link #readJsonSnapshot()} found: the last journal delta the file holds, and whether all of it was read. */
+    private record JsonSnapshot(long folded, boolean intact) {}
+
+    /**
+     * Load the JSON snapshot. If its header is current, the block checksums are streamed first
+     * and a damaged file is never parsed past its last intact block; without a header parsing is
+     * the only check. Either way a damaged file is copied aside and the users in front of the
+     * damage are kept, instead of replacing the data with the bundled resource.
+     *
+     * @return intact if the whole file was read, not if only part of it could be recovered
+     */
+    private static JsonSnapshot readJsonSnapshot() {
+        UsersSnapshotHeader.Header header = null;
+        int good = 0;
+        try {
+            header = UsersSnapshotHeader.read(jsonFile);
+            if (header != null) {
+                good = UsersSnapshotHeader.validate(jsonFile, header);
+                if (good < header.blocks().size()) {
+                    LOGGER.severe("Checksum mismatch in block " + good + " of " + header.blocks().size()
+                            + " of " + jsonFile.toAbsolutePath());
+                }
+            }
+            if (header == null || good == header.blocks().size()) {
+                try (Reader reader = Files.newBufferedReader(jsonFile)) {
+                    return new JsonSnapshot(readUsers(reader), true);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not read " + jsonFile.toAbsolutePath(), e);
+        }
+
+        preserveDamaged(jsonFile);
+        List<User> users = new ArrayList<>();
+        long[] folded = new long[1];
+        try {
+            if (header != null) {
+                // Only the intact blocks, closed into a valid document
+                long end = good == 0 ? 0 : header.blocks().get(good - 1).end();
+                if (end > 0) {
+                    byte[] intact = new byte[Math.toIntExact(end)];
+                    try (InputStream in = Files.newInputStream(jsonFile)) {
+                        in.readNBytes(intact, 0, intact.length);
                     }
-                    LOGGER.info("Loaded " + USERS.size() + " users from resources");
-                    // Save to data folder immediately so future loads use the same file
-                    save();
-                    return;
+                    // A block ends on a user, inside the users array of a snapshot object or a plain array
+                    String close = intact[0] == '{' ? "]}" : "]";
+                    InputStream closed = new SequenceInputStream(new ByteArrayInputStream(intact),
+                            new ByteArrayInputStream(close.getBytes(StandardCharsets.UTF_8)));
+                    UsersCodec.readSnapshot(new InputStreamReader(closed, StandardCharsets.UTF_8), n -> folded[0] = n, users::add);
+                }
+            } else {
+                // Keep every user read before the parser gave up
+                try (Reader reader = Files.newBufferedReader(jsonFile)) {
+                    UsersCodec.readSnapshot(reader, n -> folded[0] = n, users::add);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Stopped recovering " + jsonFile.toAbsolutePath() + " after " + users.size() + " users", e);
+        }
+
+        Map<Long, User> userMap = new ConcurrentHashMap<>();
+        for (User u : users) {
+            userMap.put(u.id(), u);
+        }
+        synchronized (Users.class) {
+            USERS = users;
+            USER_MAP = userMap;
+            ACCOUNT_INDEX = null;
+            USERNAME_INDEX = null;
+            LEDGER_INDEX = null;
+            SNAPSHOT = null;
+            SNAPSHOT_SLOTS = null;
+        }
+        markAllDirty();
+        LOGGER.severe("Recovered " + users.size() + " users from the intact part of " + jsonFile.toAbsolutePath());
+        return new JsonSnapshot(folded[0], false);
+    }
+
+    /** Keep a copy of a damaged snapshot before it gets replaced. */
+    private static void preserveDamaged(Path file) {
+        Path copy = file.resolveSibling(file.getFileName() + ".damaged-" + System.currentTimeMillis());
+        try {
+            Files.copy(file, copy);
+            LOGGER.severe("Kept the damaged snapshot as " + copy.toAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Could not keep a copy of the damaged snapshot " + file.toAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Stream users straight into the list and the id index in one pass.
+     * The current state is only replaced once the whole document was read.
+     *
+     * @return the last journal delta the document holds, 0 for a plain array of users
+     */
+    private static long readUsers(Reader reader) throws IOException {
+        List<User> users = new ArrayList<>();
+        Map<Long, User> userMap = new ConcurrentHashMap<>();
+        long[] folded = new long[1];
+        UsersCodec.readSnapshot(reader, n -> folded[0] = n, u -> {
+            users.add(u);
+            userMap.put(u.id(), u);
+        });
+        synchronized (Users.class) {
+            USERS = users;
+            USER_MAP = userMap;
+            ACCOUNT_INDEX = null;
+            USERNAME_INDEX = null;
+            LEDGER_INDEX = null;
+            SNAPSHOT = null;
+            SNAPSHOT_SLOTS = null;
+        }
+        markAllDirty();
+        return folded[0];
+    }
+
+    /**
+     * Write the in-memory users to a JSON file, whatever the snapshot format is.
+     */
+    public static void exportJson(Path file) throws IOException {
+        List<User> users;
+        synchronized (Users.class) {
+            users = new ArrayList<>(USERS);
+        }
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            UsersCodec.write(writer, users, prettyPrinting);
+        }
+        LOGGER.info("Exported " + users.size() + " users to " + file.toAbsolutePath());
+    }
+
+    /**
+     * @return Gson that writes and reads users like the JSON files do, balances and amounts as decimals
+     */
+    public static Gson gson() {
+        return UsersCodec.GSON;
+    }
+
+    /**
+     * Replace the in-memory users with the contents of a JSON file and write a new snapshot.
+     */
+    public static void importJson(Path file) throws IOException {
+        try (AccountLocks.Held ignored = structural(); Reader reader = Files.newBufferedReader(file)) {
+            readUsers(reader);
+            changedAll();
+            CHANGES.reloaded();
+        }
+        LOGGER.info("Imported " + USERS.size() + " users from " + file.toAbsolutePath());
+        save();
+    }
+
+    /**
+     * Write a full snapshot and wait until it is on disk. The file is replaced atomically,
+     * so a crash leaves either the previous or the new snapshot on disk, never a truncated one.
+     * UI code should prefer {@link #saveAsync()}.
+     */
+    public static void save() {
+        saveAsync();
+        flush();
+    }
+
+    /**
+     * Request a snapshot write on the background writer and return immediately.
+     * Without the journal, requests made within the group commit window share one physical write.
+     * With the journal, the state is captured now and the active delta is sealed at the same
+     * point, so the new base replaces exactly the sealed deltas and entries queued after this
+     * call go to the next delta. The base is written on the compactor thread; delta appends
+     * carry on meanwhile. Capturing waits for the postings under way, so it must not be called
+     * while holding the locks of a posting.
+     *
+     * @return a future completed once the snapshot is on disk
+     */
+    public static CompletableFuture<Void> saveAsync() {
+        if (journaled) {
+            // Exclusive: every posting applied so far has queued its entries, and none is half done
+            try (AccountLocks.Held ignored = structural()) {
+                Cut cut = cut();
+                UsersJournal target;
+                synchronized (PENDING) {
+                    journalEntries = 0;
+                    sealedDeltas = 0;
+                    target = journal;
+                }
+                long[] folded = new long[1];
+                CompletableFuture<Void> rolled = WRITER.submit(() -> folded[0] = target.roll());
+                return COMPACTOR.submit(() -> {
+                    // The snapshot records the sealed delta, so it can only be written once the roll is done
+                    rolled.join();
+                    writeSnapshot(cut, folded[0]);
+                    target.checkpoint(folded[0]);
+                });
+            }
+        }
+        // Deltas still on disk were replayed by the last load and are discarded after the write
+        return WRITER.requestSnapshot(() -> writeSnapshot(cut(), journal.lastDelta()));
+    }
+
+    /**
+     * Flush barrier: wait until every write requested so far is on disk.
+     * Used on shutdown, before re-reading the files and by tests.
+     */
+    public static void flush() {
+        // Compactions wait for the delta roll on WRITER, so drain that one first
+        WRITER.flush();
+        COMPACTOR.flush();
+    }
+
+    /**
+     * @return true while changes made in memory are still waiting for the background writer
+     */
+    public static boolean isDirty() {
+        return WRITER.persistedVersion() < WRITER.dirtyVersion()
+                || COMPACTOR.persistedVersion() < COMPACTOR.dirtyVersion();
+    }
+
+    /**
+     * @param millis how long {@link #saveAsync()} waits for further requests before writing
+     */
+    public static void setGroupCommitWindow(long millis) {
+        WRITER.setWindowMillis(millis);
+    }
+
+    /** Users to write, and the ids changed since the previous snapshot (null if unknown). */
+    private record Cut(List<User> users, Set<Long> dirty) {}
+
+    /**
+     * Point-in-time copy, which the published snapshot already is. The dirty users are taken
+     * first: a posting marks its user after publishing, so a user marked too late for this cut
+     * is in the next one.
+     */
+    private static Cut cut() {
+        Set<Long> dirty = takeDirty();
+        return new Cut(snapshot().users(), dirty);
+    }
+
+    private static Set<Long> takeDirty() {
+        synchronized (PENDING) {
+            Set<Long> dirty = allDirty ? null : dirtyUsers;
+            dirtyUsers = new HashSet<>();
+            allDirty = false;
+            return dirty;
+        }
+    }
+
+    private static void markDirty(long userId) {
+        synchronized (PENDING) {
+            dirtyUsers.add(userId);
+        }
+    }
+
+    private static void markAllDirty() {
+        synchronized (PENDING) {
+            allDirty = true;
+        }
+    }
+
+    /**
+     * Write the snapshot in the current format; every file is replaced atomically.
+     * Runs on the writer thread, or on the compactor thread in journaled mode.
+     *
+     * @param folded the last journal delta the cut holds; recorded in the snapshot itself, so a
+     *               crash before the deltas are deleted doesn't replay them a second time
+     */
+    private static void writeSnapshot(Cut cut, long folded) throws IOException {
+        List<User> users = cut.users();
+        Path target = snapshotFile();
+        UsersSnapshotHeader.Header[] header = new UsersSnapshotHeader.Header[1];
+        long generation = UsersSnapshotHeader.newGeneration();
+        switch (snapshotFormat) {
+            case JSON -> AtomicFiles.write(target, ch -> {
+                UsersSnapshotHeader.Checksummer sum = new UsersSnapshotHeader.Checksummer(
+                        new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+                Writer writer = new OutputStreamWriter(sum, StandardCharsets.UTF_8);
+                UsersCodec.writeSnapshot(writer, users, generation, folded, prettyPrinting, () -> {
+                    writer.flush();
+                    sum.endUser();
+                });
+                writer.flush();
+                header[0] = sum.finish(generation);
+            });
+            case BINARY -> AtomicFiles.write(target, ch -> {
+                UsersBinarySnapshot.write(ch, users, folded, generation);
+                header[0] = UsersSnapshotHeader.ofChannel(ch, users.size(), generation);
+            });
+            case SHARDED -> {
+                try {
+                    shards().write(users, cut.dirty(), folded, prettyPrinting);
+                } catch (IOException e) {
+                    // Some shards may be stale now; rewrite them all next time
+                    markAllDirty();
+                    throw e;
+                }
+            }
+        }
+        if (header[0] != null) {
+            UsersSnapshotHeader.write(target, header[0]);
+        }
+        AtomicFiles.forceDirectory(target.toAbsolutePath().getParent());
+        LOGGER.info("Saved " + users.size() + " users to " + target.toAbsolutePath());
+
+        if (!journaled) {
+            // The snapshot now holds everything the deltas did
+            try {
+                journal.discard();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to discard the journal of " + target.toAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Persist a ledger mutation in the background: append it to the active delta in journaled
+     * mode, otherwise a snapshot is due. An unusable journal forces a new base. Seals the delta
+     * every checkpoint interval; once enough deltas are sealed a new base is due.
+     * Called by a posting that still holds its locks, so the append is queued before any
+     * compaction can cut the state the posting changed.
+     *
+     * @return true if the caller has to {@link #saveAsync()} once it released its locks
+     */
+    private static boolean commit(List<UsersJournal.Entry> entries) {
+        // Numbered when they were published; delivered here, outside PUBLISHED
+        CHANGES.deliver();
+        synchronized (PENDING) {
+            for (UsersJournal.Entry e : entries) {
+                dirtyUsers.add(e.user());
+            }
+            if (!journaled || !journal.isBound()) {
+                return true;
+            }
+            return append(entries);
+        }
+    }
+
+    /**
+     * Journal an added, replaced or removed user like a posting, so the postings that follow it
+     * are never replayed without it. Without the journal the caller's snapshot persists it, as
+     * before. Called under the exclusive structure lock.
+     *
+     * @return true if the caller has to {@link #saveAsync()} once it released its locks
+     */
+    private static boolean journalChange(UsersJournal.Entry entry) {
+        synchronized (PENDING) {
+            if (!journaled) {
+                return false;
+            }
+            if (!journal.isBound()) {
+                return true;
+            }
+            return append(List.of(entry));
+        }
+    }
+
+    // Under PENDING with a bound journal: queue the append, and seal or compact when due
+    private static boolean append(List<UsersJournal.Entry> entries) {
+        UsersJournal target = journal;
+        WRITER.submit(() -> target.append(entries));
+        journalEntries += entries.size();
+        if (journalEntries < checkpointInterval) {
+            return false;
+        }
+        if (sealedDeltas + 1 >= compactionThreshold) {
+            // Counted here, so the postings right behind this one don't ask for another base
+            journalEntries = 0;
+            sealedDeltas = 0;
+            return true;
+        }
+        WRITER.submit(target::roll);
+        journalEntries = 0;
+        sealedDeltas++;
+        return false;
+    }
+
+    /**
+     * @param folded the last delta the loaded snapshot holds, as recorded in it
+     */
+    private static void replayJournal(long folded) {
+        try {
+            int replayed = journal.replay(folded, Users::applyJournalEntry);
+            synchronized (PENDING) {
+                journalEntries = journal.size();
+                sealedDeltas = journal.sealed();
+            }
+            if (replayed > 0) {
+                LOGGER.info("Replayed " + replayed + " journal entries from " + (sealedDeltas + 1)
+                        + " deltas of " + snapshotFile().toAbsolutePath());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to replay the journal of " + snapshotFile().toAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Apply the deltas of the JSON file before it is imported into another format, so the new
+     * snapshot starts from all of it. The JSON file and its deltas are left as they are.
+     */
+    private static void replayJsonJournal(long folded) {
+        UsersJournal deltas = new UsersJournal(jsonFile);
+        try {
+            int replayed = deltas.replay(folded, Users::applyJournalEntry);
+            deltas.close();
+            if (replayed > 0) {
+                LOGGER.info("Replayed " + replayed + " journal entries of " + jsonFile.toAbsolutePath() + " before importing it");
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to replay the journal of " + jsonFile.toAbsolutePath(), e);
+        }
+    }
+
+    private static void applyJournalEntry(UsersJournal.Entry entry) {
+        switch (entry.op()) {
+            case UsersJournal.PUT -> {
+                if (!replaceLocked(entry.value(), false)) {
+                    addLocked(entry.value(), false);
+                }
+                return;
+            }
+            case UsersJournal.REMOVE -> {
+                removeLocked(entry.user(), false);
+                return;
+            }
+            default -> {
+            }
+        }
+        User user = get(entry.user());
+        Account account = findAccount(user, entry.account());
+        if (account == null) {
+            LOGGER.warning("Skipping journal entry for unknown account " + entry.account() + " (user " + entry.user() + ")");
+            return;
+        }
+
+        markDirty(user.id());
+        replaceAccounts(false, new Posted(user, account, new Account(
+                account.number(),
+                account.type(),
+                entry.balance(),
+                PersistentVector.from(account.transactions()).plus(entry.tx())
+        ), entry.tx()));
+    }
+
+    public static void add(User user) {
+        boolean save;
+        try (AccountLocks.Held ignored = structural()) {
+            addLocked(user, true);
+            save = journalChange(UsersJournal.Entry.put(user));
+        }
+        if (save) {
+            saveAsync();
+        }
+    }
+
+    /** @param announce false while replaying the journal, which a load follows with RELOADED */
+    private static synchronized void addLocked(User user, boolean announce) {
+        USERS.add(user);
+        USER_MAP.put(user.id(), user);
+        indexAccounts(user);
+        if (USERNAME_INDEX != null) {
+            USERNAME_INDEX.add(user);
+        }
+        // Listeners get the record the snapshot shows, not the caller's
+        User published = frozen(user);
+        synchronized (PUBLISHED) {
+            if (LEDGER_INDEX != null) {
+                LEDGER_INDEX.add(user);
+            }
+            if (SNAPSHOT != null) {
+                publish(SNAPSHOT.users.plus(published));
+                if (SNAPSHOT_SLOTS != null) {
+                    SNAPSHOT_SLOTS.put(user.id(), USERS.size() - 1);
+                }
+            }
+        }
+        markDirty(user.id());
+        changedAll();
+        if (announce) {
+            CHANGES.userAdded(published);
+            LOGGER.info("Added user: " + user.username() + " (ID " + user.id() + ")");
+        }
+    }
+
+    /**
+     * Replace the user with the same id, keeping its position in the list.
+     *
+     * @return false if there is no such user
+     */
+    public static boolean replace(User user) {
+        boolean save;
+        try (AccountLocks.Held ignored = structural()) {
+            if (!replaceLocked(user, true)) {
+                return false;
+            }
+            save = journalChange(UsersJournal.Entry.put(user));
+        }
+        if (save) {
+            saveAsync();
+        }
+        return true;
+    }
+
+    private static synchronized boolean replaceLocked(User user, boolean announce) {
+        for (int i = 0; i < USERS.size(); i++) {
+            if (USERS.get(i).id() == user.id()) {
+                User old = USERS.set(i, user);
+                USER_MAP.put(user.id(), user);
+                unindexAccounts(old);
+                indexAccounts(user);
+                if (USERNAME_INDEX != null && !USERNAME_INDEX.replace(old, user)) {
+                    USERNAME_INDEX = null;
+                }
+                User published = frozen(user);
+                synchronized (PUBLISHED) {
+                    if (LEDGER_INDEX != null) {
+                        LEDGER_INDEX.remove(old);
+                        LEDGER_INDEX.add(user);
+                    }
+                    if (SNAPSHOT != null) {
+                        publish(SNAPSHOT.users.with(i, published));
+                    }
+                }
+                markDirty(user.id());
+                USER_VERSION.incrementAndGet();
+                if (old.accounts() != user.accounts()) {
+                    ACCOUNT_VERSION.incrementAndGet();
+                    TRANSACTION_VERSION.incrementAndGet();
+                }
+                if (announce) {
+                    CHANGES.userReplaced(old, published);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false if there is no such user
+     */
+    public static boolean remove(long id) {
+        boolean save;
+        try (AccountLocks.Held ignored = structural()) {
+            if (!removeLocked(id, true)) {
+                return false;
+            }
+            save = journalChange(UsersJournal.Entry.remove(id));
+        }
+        if (save) {
+            saveAsync();
+        }
+        return true;
+    }
+
+    private static synchronized boolean removeLocked(long id, boolean announce) {
+        for (int i = 0; i < USERS.size(); i++) {
+            if (USERS.get(i).id() == id) {
+                User old = USERS.remove(i);
+                unindexAccounts(old);
+                if (USERNAME_INDEX != null && !USERNAME_INDEX.remove(old)) {
+                    USERNAME_INDEX = null;
+                }
+                synchronized (PUBLISHED) {
+                    if (LEDGER_INDEX != null) {
+                        LEDGER_INDEX.remove(old);
+                    }
+                    if (SNAPSHOT != null) {
+                        publish(SNAPSHOT.users.without(i));
+                    }
+                    // Every later user moved up a slot
+                    SNAPSHOT_SLOTS = null;
+                }
+                USER_MAP.remove(id);
+                markDirty(id);
+                changedAll();
+                if (announce) {
+                    CHANGES.userRemoved(id);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The live user list, which this class changes in place while postings run. Only for code
+     * that changes the users itself, such as loading and tests; readers take a
+     * {@link #snapshot()}, which never changes under them.
+     */
+    public static List<User> get() {
+        return USERS;
+    }
+
+    public static User get(long id) {
+        User user = USER_MAP.get(id);
+        if (user == null && USERS instanceof LazyUserList lazy) {
+            // Decode only this user from the mapped snapshot
+            user = lazy.find(id);
+            if (user != null) {
+                USER_MAP.put(id, user);
+            }
+        }
+        return user;
+    }
+
+    public static void reset() {
+        // A pending snapshot copies the list when it runs; don't let it copy an empty one
+        flush();
+        try (AccountLocks.Held ignored = structural()) {
+            resetLocked();
+        }
+        LOGGER.info("Reset in-memory users.");
+    }
+
+    private static synchronized void resetLocked() {
+        USERS.clear();
+        USER_MAP.clear();
+        ACCOUNT_INDEX = new ConcurrentHashMap<>();
+        USERNAME_INDEX = new UsernameIndex();
+        synchronized (PUBLISHED) {
+            LEDGER_INDEX = new LedgerIndex();
+            publish(PersistentVector.empty());
+            SNAPSHOT_SLOTS = new HashMap<>();
+        }
+        markAllDirty();
+        changedAll();
+        CHANGES.reloaded();
+    }
+
+    /**
+     * Execute a transaction between two accounts (can be same user or different users)
+     * Creates two transactions: withdrawal from account 1, deposit to account 2
+     * Updates both account balances and persists them (journal entry or full JSON save)
+     *
+     * @param u1 User 1 ID (sender)
+     * @param a1 Account 1 number (from)
+     * @param u2 User 2 ID (receiver)
+     * @param a2 Account 2 number (to)
+     * @param amount Amount to transfer
+     * @param details Transaction description
+     */
+    public static void transaction(long u1, String a1, long u2, String a2, double amount, String details) {
+        String error = post(new Transfer(u1, a1, u2, a2, amount, details), a1, a2);
+        if (error != null) {
+            LOGGER.warning("Transaction failed: " + error);
+        } else {
+            LOGGER.info("Transaction completed: " + amount + " from " + a1 + " to " + a2);
+        }
+    }
+
+    /**
+     * Execute a withdrawal to an external recipient (non-user)
+     * Creates one withdrawal transaction and updates account balance
+     *
+     * @param userId User ID
+     * @param accountNumber Account number to withdraw from
+     * @param amount Amount to withdraw
+     * @param recipientName External recipient name
+     * @param details Transaction description
+     */
+    public static void withdraw(long userId, String accountNumber, double amount, String recipientName, String details) {
+        String error = post(new Withdrawal(userId, accountNumber, amount, recipientName, details), accountNumber, null);
+        if (error != null) {
+            LOGGER.warning("Withdrawal failed: " + error);
+        } else {
+            LOGGER.info("Withdrawal completed: " + amount + " from " + accountNumber + " to " + recipientName);
+        }
+    }
+
+    /**
+     * Execute a deposit from an external source (non-user).
+     * Creates one deposit transaction and updates account balance.
+     *
+     * @param userId User ID
+     * @param accountNumber Account number to deposit to
+     * @param amount Amount to deposit
+     * @param senderName External sender name
+     * @param details Transaction description
+     */
+    public static void deposit(long userId, String accountNumber, double amount, String senderName, String details) {
+        String error = post(new Deposit(userId, accountNumber, amount, senderName, details), accountNumber, null);
+        if (error != null) {
+            LOGGER.warning("Deposit failed: " + error);
+        } else {
+            LOGGER.info("Deposit completed: " + amount + " to " + accountNumber + " from " + senderName);
+        }
+    }
+
+    /**
+     * Post many transfers, deposits and withdrawals, e.g. a payroll run or an end-of-day
+     * settlement. Every item is checked first; the valid ones are then applied in order, each
+     * seeing the balances the items before it left, and the whole batch is persisted once
+     * (one journal append or one snapshot) instead of once per item.
+     * <p>
+     * The accounts of the batch stay locked while it runs; postings on other accounts go on.
+     *
+     * @return one result per item, in the order of the items
+     */
+    public static List<PostingResult> transactionBatch(List<? extends Posting> postings) {
+        Set<String> accounts = new HashSet<>();
+        for (Posting p : postings) {
+            switch (p) {
+                case Transfer t -> {
+                    accounts.add(t.fromAccount());
+                    accounts.add(t.toAccount());
+                }
+                case Deposit d -> accounts.add(d.account());
+                case Withdrawal w -> accounts.add(w.account());
+            }
+        }
+        long date = bank.Convert.date(java.time.LocalDate.now().toString());
+        List<PostingResult> results = new ArrayList<>(postings.size());
+        int posted = 0;
+        boolean save = false;
+        try (AccountLocks.Held ignored = posting(accounts)) {
+            List<String> errors = new ArrayList<>(postings.size());
+            for (Posting p : postings) {
+                errors.add(check(p));
+            }
+            List<UsersJournal.Entry> entries = new ArrayList<>(2 * postings.size());
+            for (int i = 0; i < postings.size(); i++) {
+                Posting p = postings.get(i);
+                String error = errors.get(i);
+                if (error == null) {
+                    error = apply(p, date, entries);
                 }
+                if (error == null) {
+                    posted++;
+                }
+                results.add(new PostingResult(p, error));
+            }
+            if (!entries.isEmpty()) {
+                save = commit(entries);
             }
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to load users from resources", e);
         }
-
-        // if both fail, start with empty list
-        USERS = new ArrayList<>();
-        USER_MAP = new HashMap<>();
-        LOGGER.warning("Starting with empty user list");
+        if (save) {
+            saveAsync();
+        }
+        LOGGER.info("Batch completed: " + posted + " of " + postings.size() + " postings applied");
+        return results;
     }
 
-    public static void save() {
-        try (Writer writer = Files.newBufferedWriter(jsonFile)) {
-            GSON.toJson(USERS, writer);
-            LOGGER.info("Saved " + USERS.size() + " users to " + jsonFile.toAbsolutePath());
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to save users to " + jsonFile.toAbsolutePath(), e);
+    /** A transfer, deposit or withdrawal for {@link #transactionBatch}. */
+    public sealed interface Posting permits Transfer, Deposit, Withdrawal {}
+
+    /** Money moved between two accounts, see {@link #transaction}. */
+    public record Transfer(long fromUser, String fromAccount, long toUser, String toAccount,
+                           double amount, String details) implements Posting {}
+
+    /** Money paid in from outside the bank, see {@link #deposit}. */
+    public record Deposit(long userId, String account, double amount, String senderName,
+                          String details) implements Posting {}
+
+    /** Money paid out of the bank, see {@link #withdraw}. */
+    public record Withdrawal(long userId, String account, double amount, String recipientName,
+                             String details) implements Posting {}
+
+    /**
+     * The outcome of one item of a batch.
+     *
+     * @param error why the item was not posted; null if it was
+     */
+    public record PostingResult(Posting posting, String error) {
+        public boolean posted() {
+            return error == null;
         }
     }
 
-    public static void add(User user) {
-        USERS.add(user);
-        USER_MAP.put(user.id(), user);
-        LOGGER.info("Added user: " + user.username() + " (ID " + user.id() + ")");
+    // One posting under its locks, persisted on its own; the error, or null once posted
+    private static String post(Posting p, String a1, String a2) {
+        String error;
+        boolean save = false;
+        try (AccountLocks.Held ignored = posting(a1, a2)) {
+            List<UsersJournal.Entry> entries = new ArrayList<>(2);
+            error = check(p);
+            if (error == null) {
+                error = apply(p, bank.Convert.date(java.time.LocalDate.now().toString()), entries);
+            }
+            if (error == null) {
+                save = commit(entries);
+            }
+        }
+        if (save) {
+            saveAsync();
+        }
+        return error;
     }
 
-    public static List<User> get() {
-        return USERS;
+    /** Why the posting can't be applied whatever the balances are, or null if it can. */
+    private static String check(Posting p) {
+        return switch (p) {
+            case Transfer t -> {
+                if (!positive(t.amount())) {
+                    yield "amount must be positive";
+                }
+                User U1 = Users.get(t.fromUser());
+                User U2 = Users.get(t.toUser());
+                if (U1 == null || U2 == null) {
+                    yield "user not found (U1: " + t.fromUser() + ", U2: " + t.toUser() + ")";
+                }
+                if (findAccount(U1, t.fromAccount()) == null || findAccount(U2, t.toAccount()) == null) {
+                    yield "account not found (A1: " + t.fromAccount() + ", A2: " + t.toAccount() + ")";
+                }
+                yield null;
+            }
+            case Deposit d -> checkOne(d.userId(), d.account(), d.amount());
+            case Withdrawal w -> checkOne(w.userId(), w.account(), w.amount());
+        };
     }
 
-    public static User get(long id) {
-        return USER_MAP.get(id);
+    private static String checkOne(long userId, String accountNumber, double amount) {
+        if (!positive(amount)) {
+            return "amount must be positive";
+        }
+        User user = Users.get(userId);
+        if (user == null) {
+            return "user not found (ID: " + userId + ")";
+        }
+        if (findAccount(user, accountNumber) == null) {
+            return "account not found (" + accountNumber + ")";
+        }
+        return null;
     }
 
-    public static void reset() {
-        USERS.clear();
-        USER_MAP.clear();
-        LOGGER.info("Reset in-memory users.");
+    // At least a cent once rounded to cents, which is what gets posted; apply rejects huge amounts
+    private static boolean positive(double amount) {
+        return amount > 0 && (amount >= 1 || Money.cents(amount) > 0);
     }
 
     /**
-     * Execute a transaction between two accounts (can be same user or different users)
-     * Creates two transactions: withdrawal from account 1, deposit to account 2
-     * Updates both account balances and saves to JSON
+     * Apply a checked posting whose accounts are locked: new records in memory, the journal
+     * entries added to {@code entries} for the caller to commit. Amounts are rounded to cents
+     * and balances computed in cents.
      *
-     * @param u1 User 1 ID (sender)
-     * @param a1 Account 1 number (from)
-     * @param u2 User 2 ID (receiver)
-     * @param a2 Account 2 number (to)
-     * @param amount Amount to transfer
-     * @param details Transaction description
+     * @return why it was not applied, or null
      */
-    public static void transaction(long u1, String a1, long u2, String a2, double amount, String details) {
-        // Validate amount
-        if (amount <= 0) {
-            LOGGER.warning("Transaction failed: amount must be positive");
-            return;
+    private static String apply(Posting p, long date, List<UsersJournal.Entry> entries) {
+        try {
+            return switch (p) {
+                case Transfer t -> applyTransfer(t, date, entries);
+                case Withdrawal w -> applyWithdrawal(w, date, entries);
+                case Deposit d -> applyDeposit(d, date, entries);
+            };
+        } catch (ArithmeticException e) {
+            // Nothing was replaced yet: the new balances are computed first
+            return "amount or balance out of range";
         }
+    }
 
-        long date = bank.Convert.date(java.time.LocalDate.now().toString());
-
-        User U1 = Users.get(u1);
-        User U2 = Users.get(u2);
-
-        if (U1 == null || U2 == null) {
-            LOGGER.warning("Transaction failed: user not found (U1: " + u1 + ", U2: " + u2 + ")");
-            return;
-        }
+    private static String applyTransfer(Transfer t, long date, List<UsersJournal.Entry> entries) {
+        long amount = Money.cents(t.amount());
+        User U1 = Users.get(t.fromUser());
+        User U2 = Users.get(t.toUser());
 
         // Find accounts using helper method
-        Account A1 = findAccount(U1, a1);
-        Account A2 = findAccount(U2, a2);
-
-        if (A1 == null || A2 == null) {
-            LOGGER.warning("Transaction failed: account not found (A1: " + a1 + ", A2: " + a2 + ")");
-            return;
-        }
+        Account A1 = findAccount(U1, t.fromAccount());
+        Account A2 = findAccount(U2, t.toAccount());
 
         // Check sufficient balance
-        if (A1.balance() < amount) {
-            LOGGER.warning("Transaction failed: insufficient balance (has: " + A1.balance() + ", needs: " + amount + ")");
-            return;
+        if (A1.balanceCents() < amount) {
+            return "insufficient balance (has: " + Money.format(A1.balanceCents()) + ", needs: " + Money.format(amount) + ")";
         }
+        long balance1 = Money.subtract(A1.balanceCents(), amount);
+        long balance2 = Money.add(A2.balanceCents(), amount);
 
         // Create transaction records
         Transaction T1 = new Transaction(
                 date,
-                -amount,
-                details,
+                Money.negate(amount),
+                t.details(),
                 A2.number(),
                 A1.number(),
                 U2.id(),
@@ -190,173 +1372,155 @@ public class Users {
         Transaction T2 = new Transaction(
                 date,
                 amount,
-                details,
+                t.details(),
                 A2.number(),
                 A1.number(),
                 U1.id(),
                 U1.name()
         );
 
-        // Create NEW transaction lists with defensive copies
-        List<Transaction> newT1List = new ArrayList<>(A1.transactions());
-        newT1List.add(T1);
-
-        List<Transaction> newT2List = new ArrayList<>(A2.transactions());
-        newT2List.add(T2);
+        // Extend the histories; the old accounts keep theirs, sharing all but the last block
+        List<Transaction> newT1List = PersistentVector.from(A1.transactions()).plus(T1);
+        List<Transaction> newT2List = PersistentVector.from(A2.transactions()).plus(T2);
 
         // Create new account records with updated balances and NEW lists
         Account A1b = new Account(
                 A1.number(),
                 A1.type(),
-                A1.balance() - amount,
+                balance1,
                 newT1List
         );
 
         Account A2b = new Account(
                 A2.number(),
                 A2.type(),
-                A2.balance() + amount,
+                balance2,
                 newT2List
         );
 
-        // Replace accounts using helper method
-        replaceAccount(U1, A1, A1b);
-        replaceAccount(U2, A2, A2b);
+        // Replace both accounts at once, so no snapshot shows only one side of the transfer
+        replaceAccounts(true, new Posted(U1, A1, A1b, T1), new Posted(U2, A2, A2b, T2));
 
-        Users.save();
-        LOGGER.info("Transaction completed: " + amount + " from " + a1 + " to " + a2);
+        entries.add(UsersJournal.Entry.post(U1.id(), A1b.number(), A1b.balanceCents(), T1));
+        entries.add(UsersJournal.Entry.post(U2.id(), A2b.number(), A2b.balanceCents(), T2));
+        return null;
     }
 
-    /**
-     * Execute a withdrawal to an external recipient (non-user)
-     * Creates one withdrawal transaction and updates account balance
-     *
-     * @param userId User ID
-     * @param accountNumber Account number to withdraw from
-     * @param amount Amount to withdraw
-     * @param recipientName External recipient name
-     * @param details Transaction description
-     */
-    public static void withdraw(long userId, String accountNumber, double amount, String recipientName, String details) {
-        // Validate amount
-        if (amount <= 0) {
-            LOGGER.warning("Withdrawal failed: amount must be positive");
-            return;
-        }
-
-        long date = bank.Convert.date(java.time.LocalDate.now().toString());
-
-        // Get user
-        User user = Users.get(userId);
-        if (user == null) {
-            LOGGER.warning("Withdrawal failed: user not found (ID: " + userId + ")");
-            return;
-        }
-
-        // Find account using helper method
-        Account account = findAccount(user, accountNumber);
-        if (account == null) {
-            LOGGER.warning("Withdrawal failed: account not found (" + accountNumber + ")");
-            return;
-        }
+    private static String applyWithdrawal(Withdrawal w, long date, List<UsersJournal.Entry> entries) {
+        long amount = Money.cents(w.amount());
+        User user = Users.get(w.userId());
+        Account account = findAccount(user, w.account());
 
         // Check sufficient balance
-        if (account.balance() < amount) {
-            LOGGER.warning("Withdrawal failed: insufficient balance (has: " + account.balance() + ", needs: " + amount + ")");
-            return;
+        if (account.balanceCents() < amount) {
+            return "insufficient balance (has: " + Money.format(account.balanceCents()) + ", needs: " + Money.format(amount) + ")";
         }
+        long balance = Money.subtract(account.balanceCents(), amount);
 
         // Create withdrawal transaction (negative amount, external recipient)
         Transaction withdrawal = new Transaction(
                 date,
-                -amount,
-                details,
+                Money.negate(amount),
+                w.details(),
                 "0",  // No destination account (external)
-                accountNumber,
+                w.account(),
                 0,  // No recipient ID (external)
-                recipientName
+                w.recipientName()
         );
 
-        // Create NEW transaction list with defensive copy
-        List<Transaction> newTransactionList = new ArrayList<>(account.transactions());
-        newTransactionList.add(withdrawal);
+        // Extend the history; the old account keeps its own
+        List<Transaction> newTransactionList = PersistentVector.from(account.transactions()).plus(withdrawal);
 
         // Update account with new balance and NEW list
         Account updatedAccount = new Account(
                 account.number(),
                 account.type(),
-                account.balance() - amount,
+                balance,
                 newTransactionList
         );
 
         // Replace account using helper method
-        replaceAccount(user, account, updatedAccount);
+        replaceAccounts(true, new Posted(user, account, updatedAccount, withdrawal));
 
-        Users.save();
-        LOGGER.info("Withdrawal completed: " + amount + " from " + accountNumber + " to " + recipientName);
+        entries.add(UsersJournal.Entry.post(user.id(), w.account(), updatedAccount.balanceCents(), withdrawal));
+        return null;
     }
 
-    /**
-     * Execute a deposit from an external source (non-user).
-     * Creates one deposit transaction and updates account balance.
-     *
-     * @param userId User ID
-     * @param accountNumber Account number to deposit to
-     * @param amount Amount to deposit
-     * @param senderName External sender name
-     * @param details Transaction description
-     */
-    public static void deposit(long userId, String accountNumber, double amount, String senderName, String details) {
-        // Validate amount
-        if (amount <= 0) {
-            LOGGER.warning("Deposit failed: amount must be positive");
-            return;
-        }
-
-        long date = bank.Convert.date(java.time.LocalDate.now().toString());
-
-        // Get user
-        User user = Users.get(userId);
-        if (user == null) {
-            LOGGER.warning("Deposit failed: user not found (ID: " + userId + ")");
-            return;
-        }
-
-        // Find account using helper method
-        Account account = findAccount(user, accountNumber);
-        if (account == null) {
-            LOGGER.warning("Deposit failed: account not found (" + accountNumber + ")");
-            return;
-        }
+    private static String applyDeposit(Deposit d, long date, List<UsersJournal.Entry> entries) {
+        long amount = Money.cents(d.amount());
+        User user = Users.get(d.userId());
+        Account account = findAccount(user, d.account());
+        long balance = Money.add(account.balanceCents(), amount);
 
         // Create deposit transaction (positive amount, external sender)
         Transaction deposit = new Transaction(
                 date,
                 amount,
-                details,
-                accountNumber,
+                d.details(),
+                d.account(),
                 "0",
                 0,
-                senderName
+                d.senderName()
         );
 
-        // Create new transaction list with defensive copy
-        List<Transaction> newTransactionList = new ArrayList<>(account.transactions());
-        newTransactionList.add(deposit);
+        // Extend the history; the old account keeps its own
+        List<Transaction> newTransactionList = PersistentVector.from(account.transactions()).plus(deposit);
 
         // Update account with new balance and new list
         Account updatedAccount = new Account(
                 account.number(),
                 account.type(),
-                account.balance() + amount,
+                balance,
                 newTransactionList
         );
 
         // Replace account using helper method
-        replaceAccount(user, account, updatedAccount);
+        replaceAccounts(true, new Posted(user, account, updatedAccount, deposit));
+
+        entries.add(UsersJournal.Entry.post(user.id(), d.account(), updatedAccount.balanceCents(), deposit));
+        return null;
+    }
+
+    /**
+     * Locks for a posting on one account ({@code a2} null) or two: the shared structure lock,
+     * then the account stripes. Released together.
+     */
+    private static AccountLocks.Held posting(String a1, String a2) {
+        Lock shared = STRUCTURE.readLock();
+        shared.lock();
+        try {
+            AccountLocks.Held accounts = a2 == null ? ACCOUNT_LOCKS.lock(a1) : ACCOUNT_LOCKS.lock(a1, a2);
+            return () -> {
+                accounts.close();
+                shared.unlock();
+            };
+        } catch (RuntimeException | Error e) {
+            shared.unlock();
+            throw e;
+        }
+    }
 
-        Users.save();
-        LOGGER.info("Deposit completed: " + amount + " to " + accountNumber + " from " + senderName);
+    /** Locks for a batch: the shared structure lock, then the stripes of all of its accounts. */
+    private static AccountLocks.Held posting(Collection<String> accounts) {
+        Lock shared = STRUCTURE.readLock();
+        shared.lock();
+        try {
+            AccountLocks.Held held = ACCOUNT_LOCKS.lockAll(accounts);
+            return () -> {
+                held.close();
+                shared.unlock();
+            };
+        } catch (RuntimeException | Error e) {
+            shared.unlock();
+            throw e;
+        }
+    }
+
+    /** The exclusive structure lock: waits for running postings and holds off new ones. */
+    private static AccountLocks.Held structural() {
+        Lock exclusive = STRUCTURE.writeLock();
+        exclusive.lock();
+        return exclusive::unlock;
     }
 
     /**
@@ -370,28 +1534,359 @@ public class Users {
         if (user == null || accountNumber == null) {
             return null;
         }
-        for (Account account : user.accounts()) {
-            if (account.number().equals(accountNumber)) {
-                return account;
-            }
-        }
-        return null;
+        int slot = slotOf(user, accountNumber);
+        return slot < 0 ? null : user.accounts().get(slot);
     }
 
     /**
-     * Helper method to replace an account in a user's account list
+     * An account replaced by a posting.
      *
      * @param user The user whose account to replace
      * @param oldAccount The account to replace
      * @param newAccount The new account
+     * @param posted The transaction appended to the history, for the range indexes
+     */
+    private record Posted(User user, Account oldAccount, Account newAccount, Transaction posted) {}
+
+    /**
+     * Helper method to replace accounts of their users. The caller holds the accounts' stripes;
+     * each user is replaced by a copy with a new account list (a list once handed out is never
+     * changed), and the users, the ledger index and the snapshot change in one step under
+     * PUBLISHED, so the new accounts are published in one snapshot and a range search never
+     * sees an index ahead of or behind it.
+     * <p>
+     * With {@code announce}, each posting is queued on the change log in the same step, with its
+     * user as published (a read-only copy), so the change numbers follow the order of the
+     * snapshots; the caller delivers them once PUBLISHED is released.
+     */
+    private static void replaceAccounts(boolean announce, Posted... postings) {
+        int[] slots = new int[postings.length];
+        for (int i = 0; i < postings.length; i++) {
+            Posted p = postings[i];
+            // By account number: indexOf would deep-compare every transaction of every account
+            slots[i] = p.user() == null || p.oldAccount() == null || p.newAccount() == null
+                    ? -1 : slotOf(p.user(), p.oldAccount().number());
+        }
+        boolean replaced = false;
+        synchronized (PUBLISHED) {
+            Snapshot snapshot = SNAPSHOT;
+            PersistentVector<User> published = snapshot == null ? null : snapshot.users;
+            for (int i = 0; i < postings.length; i++) {
+                Posted p = postings[i];
+                Integer at = slots[i] < 0 ? null : snapshotSlots().get(p.user().id());
+                if (at == null) {
+                    slots[i] = -1;
+                    continue;
+                }
+                // The current record: another posting of this call or a stripe next door may have replaced it
+                User live = USERS.get(at);
+                List<Account> accounts = new ArrayList<>(live.accounts());
+                accounts.set(slots[i], p.newAccount());
+                live = new User(live.id(), live.username(), live.name(), live.role(), live.password(), live.email(), accounts);
+                USERS.set(at, live);
+                USER_MAP.put(live.id(), live);
+                if (LEDGER_INDEX != null) {
+                    LEDGER_INDEX.posted(p.oldAccount(), p.newAccount(), p.posted());
+                }
+                if (published != null) {
+                    published = withAccount(published, p.user().id(), slots[i], p.newAccount());
+                }
+                replaced = true;
+            }
+            if (published != null && published != snapshot.users) {
+                publish(published);
+            }
+            for (int i = 0; i < postings.length; i++) {
+                if (announce && slots[i] >= 0) {
+                    Posted p = postings[i];
+                    CHANGES.queuePosted(frozenAfter(published, USER_MAP.get(p.user().id())), p.newAccount().number(), p.posted());
+                }
+            }
+        }
+        if (replaced) {
+            // Only once published: a search that reads the new version must find the new accounts
+            ACCOUNT_VERSION.incrementAndGet();
+            TRANSACTION_VERSION.incrementAndGet();
+        }
+    }
+
+    // Under PUBLISHED: the user as the snapshot shows it, or a frozen copy while there is none
+    private static User frozenAfter(PersistentVector<User> published, User user) {
+        Integer at = published == null ? null : snapshotSlots().get(user.id());
+        return at != null ? published.get(at) : frozen(user);
+    }
+
+    /**
+     * The users as they are now, as a snapshot that later changes don't touch. Constant time,
+     * except for the first call after a load, which builds it from the loaded users (and so
+     * decodes a mapped binary snapshot in full).
+     */
+    public static Snapshot snapshot() {
+        Snapshot snapshot = SNAPSHOT;
+        return snapshot != null ? snapshot : buildSnapshot();
+    }
+
+    private static synchronized Snapshot buildSnapshot() {
+        synchronized (PUBLISHED) {
+            if (SNAPSHOT == null) {
+                PersistentVector<User> users = PersistentVector.empty();
+                for (User u : USERS) {
+                    users = users.plus(frozen(u));
+                }
+                publish(users);
+            }
+            return SNAPSHOT;
+        }
+    }
+
+    // Under PUBLISHED
+    private static void publish(PersistentVector<User> users) {
+        SNAPSHOT = new Snapshot(++snapshotVersion, users);
+    }
+
+    /** A copy of the user that shares everything but the account list, which is made read-only. */
+    private static User frozen(User u) {
+        if (u.accounts() == null) {
+            return u;
+        }
+        return new User(u.id(), u.username(), u.name(), u.role(), u.password(), u.email(),
+                Collections.unmodifiableList(new ArrayList<>(u.accounts())));
+    }
+
+    /** The published users with one account of one user replaced. */
+    private static PersistentVector<User> withAccount(PersistentVector<User> users, long userId, int slot, Account account) {
+        Integer at = snapshotSlots().get(userId);
+        if (at == null) {
+            return users;
+        }
+        User u = users.get(at);
+        List<Account> accounts = new ArrayList<>(u.accounts());
+        accounts.set(slot, account);
+        return users.with(at, new User(u.id(), u.username(), u.name(), u.role(), u.password(), u.email(),
+                Collections.unmodifiableList(accounts)));
+    }
+
+    // Under PUBLISHED, and the structure lock in either mode keeps the user list still
+    private static Map<Long, Integer> snapshotSlots() {
+        if (SNAPSHOT_SLOTS == null) {
+            Map<Long, Integer> slots = new HashMap<>();
+            for (int i = 0; i < USERS.size(); i++) {
+                slots.put(USERS.get(i).id(), i);
+            }
+            SNAPSHOT_SLOTS = slots;
+        }
+        return SNAPSHOT_SLOTS;
+    }
+
+    /**
+     * Rows found in a sorted index, and the snapshot they were read at: every row is part of the
+     * snapshot, and every row of the snapshot inside the range is among them.
+     *
+     * @param rows in order of the indexed field
+     */
+    public record Lookup<T>(Snapshot snapshot, List<T> rows) {}
+
+    /**
+     * All transactions of the current snapshot by column. The first call lays them all out; later
+     * calls only rebuild the chunks holding users that changed since, so postings and scans don't
+     * pay for each other.
+     */
+    public static TransactionColumns transactionColumns() {
+        Snapshot snapshot = snapshot();
+        synchronized (COLUMNS_LOCK) {
+            if (COLUMNS == null || COLUMNS.snapshot().version() < snapshot.version()) {
+                COLUMNS = TransactionColumns.of(snapshot, COLUMNS);
+            }
+            return COLUMNS;
+        }
+    }
+
+    /**
+     * Accounts with a balance in the range, lowest balance first, from the sorted balance index.
+     * The index is built by the first range search after a load and kept current from then on.
+     *
+     * @param from lower bound in cents, like {@link Account#balanceCents()}
+     * @param to upper bound in cents
+     */
+    public static synchronized Lookup<Account> accountsByBalance(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        synchronized (PUBLISHED) {
+            return new Lookup<>(snapshot(), ledgerIndex().balances.range(from, fromInclusive, to, toInclusive));
+        }
+    }
+
+    /** Transactions dated in the range, oldest first. See {@link #accountsByBalance}. */
+    public static synchronized Lookup<Transaction> transactionsByDate(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        synchronized (PUBLISHED) {
+            return new Lookup<>(snapshot(), ledgerIndex().dates.range(from, fromInclusive, to, toInclusive));
+        }
+    }
+
+    /**
+     * Transactions with an amount in the range, smallest first; bounds in cents, like
+     * {@link Transaction#amountCents()}. See {@link #accountsByBalance}.
+     */
+    public static synchronized Lookup<Transaction> transactionsByAmount(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        synchronized (PUBLISHED) {
+            return new Lookup<>(snapshot(), ledgerIndex().amounts.range(from, fromInclusive, to, toInclusive));
+        }
+    }
+
+    // Under the monitor, which keeps the user list still, and PUBLISHED, which keeps postings out
+    private static LedgerIndex ledgerIndex() {
+        if (LEDGER_INDEX == null) {
+            LedgerIndex index = new LedgerIndex();
+            for (User u : USERS) {
+                index.add(u);
+            }
+            LEDGER_INDEX = index;
+        }
+        return LEDGER_INDEX;
+    }
+
+    /**
+     * Look a user up by username without scanning the list. A hit is checked against the user
+     * it points to, so an entry left stale by a change made behind our back rebuilds the index.
+     *
+     * @return the user, or null if no user has this username
+     */
+    public static User byUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        UsernameIndex index = USERNAME_INDEX;
+        Long id = (index != null ? index : usernameIndex()).get(username);
+        if (id == null) {
+            return null;
+        }
+        User user = get(id);
+        if (user != null && username.equals(user.username())) {
+            return user;
+        }
+        synchronized (Users.class) {
+            USERNAME_INDEX = null;
+            id = usernameIndex().get(username);
+            return id == null ? null : get(id);
+        }
+    }
+
+    private static synchronized UsernameIndex usernameIndex() {
+        if (USERNAME_INDEX == null) {
+            UsernameIndex index = new UsernameIndex();
+            for (User u : USERS) {
+                index.add(u);
+            }
+            USERNAME_INDEX = index;
+        }
+        return USERNAME_INDEX;
+    }
+
+    /** Where an account lives: its owner and its position in the owner's account list. */
+    private record AccountRef(long userId, int slot) {}
+
+    /**
+     * @return the user owning the account, or null if no user has it
+     */
+    public static User ownerOf(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        synchronized (Users.class) {
+            AccountRef ref = accountIndex().get(accountNumber);
+            if (ref != null) {
+                User owner = get(ref.userId());
+                if (owner != null && holds(owner, ref.slot(), accountNumber)) {
+                    return owner;
+                }
+                // The list was changed behind our back; rebuild once
+                ACCOUNT_INDEX = null;
+                ref = accountIndex().get(accountNumber);
+                if (ref != null) {
+                    return get(ref.userId());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the account with this number, whoever owns it, or null
+     */
+    public static Account account(String accountNumber) {
+        User owner = ownerOf(accountNumber);
+        return owner == null ? null : findAccount(owner, accountNumber);
+    }
+
+    public static boolean accountExists(String accountNumber) {
+        return ownerOf(accountNumber) != null;
+    }
+
+    /**
+     * Position of an account in the user's list: constant time through the index, with a scan
+     * of that one user's accounts (which repairs the index) if the entry is missing or stale.
      */
-    private static void replaceAccount(User user, Account oldAccount, Account newAccount) {
-        if (user == null || oldAccount == null || newAccount == null) {
+    private static int slotOf(User user, String accountNumber) {
+        // Not built here: a posting on a mapped snapshot must not decode every user
+        Map<String, AccountRef> index = ACCOUNT_INDEX;
+        AccountRef ref = index == null ? null : index.get(accountNumber);
+        if (ref != null && ref.userId() == user.id() && holds(user, ref.slot(), accountNumber)) {
+            return ref.slot();
+        }
+        List<Account> accounts = user.accounts();
+        if (accounts == null) {
+            return -1;
+        }
+        for (int i = 0; i < accounts.size(); i++) {
+            if (accountNumber.equals(accounts.get(i).number())) {
+                if (index != null) {
+                    index.put(accountNumber, new AccountRef(user.id(), i));
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean holds(User user, int slot, String accountNumber) {
+        List<Account> accounts = user.accounts();
+        return accounts != null && slot < accounts.size() && accountNumber.equals(accounts.get(slot).number());
+    }
+
+    /** Builds the index on first use after a load, so a lazily mapped snapshot stays lazy until then. */
+    private static Map<String, AccountRef> accountIndex() {
+        if (ACCOUNT_INDEX == null) {
+            Map<String, AccountRef> index = new ConcurrentHashMap<>();
+            for (User u : USERS) {
+                putAccounts(index, u);
+            }
+            ACCOUNT_INDEX = index;
+        }
+        return ACCOUNT_INDEX;
+    }
+
+    private static void indexAccounts(User user) {
+        if (ACCOUNT_INDEX != null) {
+            putAccounts(ACCOUNT_INDEX, user);
+        }
+    }
+
+    private static void unindexAccounts(User user) {
+        if (ACCOUNT_INDEX == null || user == null || user.accounts() == null) {
+            return;
+        }
+        for (Account a : user.accounts()) {
+            AccountRef ref = ACCOUNT_INDEX.get(a.number());
+            if (ref != null && ref.userId() == user.id()) {
+                ACCOUNT_INDEX.remove(a.number());
+            }
+        }
+    }
+
+    private static void putAccounts(Map<String, AccountRef> index, User user) {
+        if (user.accounts() == null) {
             return;
         }
-        int index = user.accounts().indexOf(oldAccount);
-        if (index >= 0) {
-            user.accounts().set(index, newAccount);
+        for (int i = 0; i < user.accounts().size(); i++) {
+            index.put(user.accounts().get(i).number(), new AccountRef(user.id(), i));
         }
     }
 }
\ No newline at end of file
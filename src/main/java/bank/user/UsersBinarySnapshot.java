@@ -0,0 +1,339 @@
+package bank.user;
+
+import bank.Money;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the {@link Users} graph, read through a memory-mapped buffer.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * header   int magic, int version, int stringCount, int userCount,
+ *          long stringsOffset, long indexOffset, long recordsOffset, long folded, long generation
+ * strings  int[stringCount] offsets into the blob, then blob of (int length, UTF-8 bytes)
+ * index    userCount x (long id, long recordOffset)
+ * records  per user: int username, name, role, password, email (string ids), int accountCount,
+ *          per account: int number, int type, long balance, int txCount, txCount fixed-width rows
+ * row      long date, long amount, int details, int to_account, int from_account,
+ *          long recipient_id, int recipient_name   (40 bytes)
+ * </pre>
+ * {@code folded} is the last journal delta the snapshot holds; version 1 files end the header
+ * before it and hold none. {@code generation} binds the {@link UsersSnapshotHeader} to the file;
+ * version 2 files end the header before it and no header vouches for them. Balances and amounts
+ * are cents; files before version 4 hold them as doubles in the same eight bytes. String id
+ * {@code -1} stands for {@code null}. Opening only maps the file; users and strings are decoded
+ * when they are first touched.
+ */
+final class UsersBinarySnapshot {
+
+    private static final int MAGIC = 0x424B5553; // "BKUS"
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 56;
+    private static final int V2_HEADER_BYTES = 48;
+    private static final int V1_HEADER_BYTES = 40;
+    private static final int INDEX_ROW_BYTES = 16;
+    private static final int TX_ROW_BYTES = 40;
+
+    private final ByteBuffer buf;
+    private final int version;
+    private final int stringCount;
+    private final int userCount;
+    private final int stringsOffset;
+    private final int blobOffset;
+    private final int indexOffset;
+    private final long folded;
+    private final String[] strings;
+
+    private UsersBinarySnapshot(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < V1_HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a users binary snapshot");
+        }
+        this.version = buf.getInt(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported users snapshot version " + version);
+        }
+        if (buf.limit() < headerBytes(version)) {
+            throw new IOException("Not a users binary snapshot");
+        }
+        this.stringCount = buf.getInt(8);
+        this.userCount = buf.getInt(12);
+        this.stringsOffset = Math.toIntExact(buf.getLong(16));
+        this.blobOffset = stringsOffset + 4 * stringCount;
+        this.indexOffset = Math.toIntExact(buf.getLong(24));
+        this.folded = version == 1 ? 0 : buf.getLong(40);
+        this.strings = new String[stringCount];
+    }
+
+    private static int headerBytes(int version) {
+        return switch (version) {
+            case 1 -> V1_HEADER_BYTES;
+            case 2 -> V2_HEADER_BYTES;
+            default -> HEADER_BYTES;
+        };
+    }
+
+    /**
+     * Read the generation from the header of a snapshot file without mapping it.
+     *
+     * @return the generation, or 0 if the file isn't a snapshot or was written before it was recorded
+     */
+    static long generation(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+            while (head.hasRemaining() && ch.read(head) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            if (head.position() < HEADER_BYTES || head.getInt(0) != MAGIC || head.getInt(4) < 3) {
+                return 0;
+            }
+            return head.getLong(V2_HEADER_BYTES);
+        }
+    }
+
+    /**
+     * Map a snapshot file. The mapping stays valid after the file is replaced on disk.
+     */
+    static UsersBinarySnapshot open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("Users snapshot larger than 2 GB: " + file);
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new UsersBinarySnapshot(map);
+        }
+    }
+
+    int userCount() {
+        return userCount;
+    }
+
+    /** @return the last journal delta folded into this snapshot */
+    long folded() {
+        return folded;
+    }
+
+    long id(int slot) {
+        return buf.getLong(indexOffset + slot * INDEX_ROW_BYTES);
+    }
+
+    /**
+     * Count the leading users whose records end at or before {@code end}, e.g. the end of the
+     * intact blocks of a damaged file. Records are laid out in slot order, so these users can be
+     * decoded whatever follows them.
+     *
+     * @return the number of such users, or -1 if the strings or the index reach past {@code end}
+     */
+    int usersBefore(long end) {
+        if (buf.getLong(32) > end) {
+            return -1;
+        }
+        int n = 0;
+        while (n < userCount) {
+            long recordEnd = n + 1 < userCount ? buf.getLong(indexOffset + (n + 1) * INDEX_ROW_BYTES + 8) : buf.limit();
+            if (recordEnd > end) {
+                break;
+            }
+            n++;
+        }
+        return n;
+    }
+
+    /** Decode one user with all accounts and transactions into fresh, mutable lists. */
+    Users.User decode(int slot) {
+        int p = Math.toIntExact(buf.getLong(indexOffset + slot * INDEX_ROW_BYTES + 8));
+        String username = string(buf.getInt(p));
+        String name = string(buf.getInt(p + 4));
+        String role = string(buf.getInt(p + 8));
+        String password = string(buf.getInt(p + 12));
+        String email = string(buf.getInt(p + 16));
+        int accountCount = buf.getInt(p + 20);
+        p += 24;
+
+        List<Users.Account> accounts = new ArrayList<>(accountCount);
+        for (int a = 0; a < accountCount; a++) {
+            String number = string(buf.getInt(p));
+            String type = string(buf.getInt(p + 4));
+            long balance = cents(p + 8);
+            int txCount = buf.getInt(p + 16);
+            p += 20;
+
+            List<Users.Transaction> transactions = new ArrayList<>(txCount);
+            for (int t = 0; t < txCount; t++, p += TX_ROW_BYTES) {
+                transactions.add(new Users.Transaction(
+                        buf.getLong(p),
+                        cents(p + 8),
+                        string(buf.getInt(p + 16)),
+                        string(buf.getInt(p + 20)),
+                        string(buf.getInt(p + 24)),
+                        buf.getLong(p + 28),
+                        string(buf.getInt(p + 36))
+                ));
+            }
+            accounts.add(new Users.Account(number, type, balance, transactions));
+        }
+        return new Users.User(buf.getLong(indexOffset + slot * INDEX_ROW_BYTES),
+                username, name, role, password, email, accounts);
+    }
+
+    private long cents(int p) {
+        return version >= 4 ? buf.getLong(p) : Money.cents(buf.getDouble(p));
+    }
+
+    private String string(int id) {
+        if (id < 0) {
+            return null;
+        }
+        String s = strings[id];
+        if (s == null) {
+            int p = blobOffset + buf.getInt(stringsOffset + 4 * id);
+            int len = buf.getInt(p);
+            byte[] bytes = new byte[len];
+            buf.get(p + 4, bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Write users in the binary layout. The caller owns (and forces) the channel.
+     *
+     * @param folded the last journal delta the users hold
+     * @param generation binds the {@link UsersSnapshotHeader} written for the file
+     */
+    static void write(FileChannel ch, List<Users.User> users, long folded, long generation) throws IOException {
+        // Pass 1: intern strings and lay out the records
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        long[] recordSizes = new long[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            Users.User u = users.get(i);
+            intern(ids, u.username(), u.name(), u.role(), u.password(), u.email());
+            long size = 24;
+            for (Users.Account a : accounts(u)) {
+                intern(ids, a.number(), a.type());
+                List<Users.Transaction> txs = transactions(a);
+                for (Users.Transaction t : txs) {
+                    intern(ids, t.details(), t.to_account(), t.from_account(), t.recipient_name());
+                }
+                size += 20 + (long) TX_ROW_BYTES * txs.size();
+            }
+            recordSizes[i] = size;
+        }
+
+        List<byte[]> encoded = new ArrayList<>(ids.size());
+        long blobSize = 0;
+        for (String s : ids.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            blobSize += 4 + bytes.length;
+        }
+
+        long stringsOffset = HEADER_BYTES;
+        long indexOffset = stringsOffset + 4L * encoded.size() + blobSize;
+        long recordsOffset = indexOffset + (long) INDEX_ROW_BYTES * users.size();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(encoded.size());
+        out.writeInt(users.size());
+        out.writeLong(stringsOffset);
+        out.writeLong(indexOffset);
+        out.writeLong(recordsOffset);
+        out.writeLong(folded);
+        out.writeLong(generation);
+
+        int offset = 0;
+        for (byte[] bytes : encoded) {
+            out.writeInt(offset);
+            offset += 4 + bytes.length;
+        }
+        for (byte[] bytes : encoded) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        long record = recordsOffset;
+        for (int i = 0; i < users.size(); i++) {
+            out.writeLong(users.get(i).id());
+            out.writeLong(record);
+            record += recordSizes[i];
+        }
+        if (record > Integer.MAX_VALUE) {
+            throw new IOException("Users snapshot would exceed 2 GB");
+        }
+
+        for (Users.User u : users) {
+            out.writeInt(id(ids, u.username()));
+            out.writeInt(id(ids, u.name()));
+            out.writeInt(id(ids, u.role()));
+            out.writeInt(id(ids, u.password()));
+            out.writeInt(id(ids, u.email()));
+            out.writeInt(accounts(u).size());
+            for (Users.Account a : accounts(u)) {
+                List<Users.Transaction> txs = transactions(a);
+                out.writeInt(id(ids, a.number()));
+                out.writeInt(id(ids, a.type()));
+                out.writeLong(a.balanceCents());
+                out.writeInt(txs.size());
+                for (Users.Transaction t : txs) {
+                    out.writeLong(t.date());
+                    out.writeLong(t.amountCents());
+                    out.writeInt(id(ids, t.details()));
+                    out.writeInt(id(ids, t.to_account()));
+                    out.writeInt(id(ids, t.from_account()));
+                    out.writeLong(t.recipient_id());
+                    out.writeInt(id(ids, t.recipient_name()));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return id to slot for every user in the file
+     */
+    Map<Long, Integer> slots() {
+        Map<Long, Integer> slots = new HashMap<>(userCount * 2);
+        for (int i = 0; i < userCount; i++) {
+            slots.put(id(i), i);
+        }
+        return slots;
+    }
+
+    private static void intern(Map<String, Integer> ids, String... values) {
+        for (String v : values) {
+            if (v != null) {
+                ids.putIfAbsent(v, ids.size());
+            }
+        }
+    }
+
+    private static int id(Map<String, Integer> ids, String value) {
+        return value == null ? -1 : ids.get(value);
+    }
+
+    private static List<Users.Account> accounts(Users.User u) {
+        return u.accounts() == null ? List.of() : u.accounts();
+    }
+
+    private static List<Users.Transaction> transactions(Users.Account a) {
+        return a.transactions() == null ? List.of() : a.transactions();
+    }
+}
@@ -0,0 +1,367 @@
+package bank.user;
+
+import bank.Money;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Streaming JSON codec for the {@link Users} graph, built on Gson's {@link JsonReader}/{@link JsonWriter}.
+ * Users are handed to the caller one at a time while the file is read, so no intermediate
+ * array or tree is built. Field names match the records, except that balances and amounts, held
+ * in cents, are written as exact decimals ({@code 525.00}); {@link #GSON} does the same for the
+ * places that hand records to Gson. A snapshot wraps the array of users in an object that also
+ * records its journal position, which only {@link #readSnapshot} understands.
+ */
+final class UsersCodec {
+
+    /** Gson that writes and reads accounts and transactions like the files. */
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Users.Account.class, new TypeAdapter<Users.Account>() {
+                @Override
+                public void write(JsonWriter writer, Users.Account a) throws IOException {
+                    writeAccount(writer, a);
+                }
+
+                @Override
+                public Users.Account read(JsonReader reader) throws IOException {
+                    return readAccount(reader);
+                }
+            }.nullSafe())
+            .registerTypeAdapter(Users.Transaction.class, new TypeAdapter<Users.Transaction>() {
+                @Override
+                public void write(JsonWriter writer, Users.Transaction t) throws IOException {
+                    writeTransaction(writer, t);
+                }
+
+                @Override
+                public Users.Transaction read(JsonReader reader) throws IOException {
+                    return readTransaction(reader);
+                }
+            }.nullSafe())
+            .create();
+
+    private UsersCodec() {}
+
+    /**
+     * Read a JSON array of users.
+     *
+     * @param in source positioned at the array (an empty or {@code null} document yields no users)
+     * @param sink receives every user in file order
+     * @return the number of users read
+     */
+    static int read(Reader in, Consumer<Users.User> sink) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        JsonToken first = reader.peek();
+        if (first == JsonToken.END_DOCUMENT) {
+            return 0;
+        }
+        if (first == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return readArray(reader, sink);
+    }
+
+    /**
+     * Read the generation at the front of a snapshot document without reading any user.
+     *
+     * @return the generation, or 0 for a plain array or a snapshot written before it was recorded
+     */
+    static long readGeneration(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return 0;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "generation" -> {
+                    return reader.nextLong();
+                }
+                case "users" -> {
+                    return 0;
+                }
+                default -> reader.skipValue();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Read a snapshot document: {@code {"generation": g, "folded": n, "users": [...]}}, or a plain array of users
+     * as written before snapshots recorded their journal position (which holds no deltas).
+     * Both are handed over as soon as they are read, so a damaged document still yields what
+     * is in front of the damage.
+     *
+     * @param folded receives the last journal delta folded into the snapshot
+     * @param sink receives every user in file order
+     */
+    static void readSnapshot(Reader in, LongConsumer folded, Consumer<Users.User> sink) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        JsonToken first = reader.peek();
+        if (first == JsonToken.END_DOCUMENT) {
+            return;
+        }
+        if (first == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        if (first != JsonToken.BEGIN_OBJECT) {
+            readArray(reader, sink);
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "folded" -> folded.accept(reader.nextLong());
+                case "users" -> readArray(reader, sink);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int readArray(JsonReader reader, Consumer<Users.User> sink) throws IOException {
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            sink.accept(readUser(reader));
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
+
+    /**
+     * Write users as a JSON array.
+     *
+     * @param pretty indent the output like {@code GsonBuilder.setPrettyPrinting()}; otherwise write it compact
+     */
+    static void write(Writer out, List<Users.User> users, boolean pretty) throws IOException {
+        JsonWriter writer = writer(out, pretty);
+        writeArray(writer, users, () -> {});
+        writer.flush();
+    }
+
+    /** Callback between users while writing. */
+    interface UserWritten {
+        void run() throws IOException;
+    }
+
+    /**
+     * Write a snapshot document, the users together with the generation that binds the
+     * {@link UsersSnapshotHeader} to it and the last journal delta folded into them, calling
+     * {@code afterUser} once the closing brace of each user was handed to {@code out}.
+     * Both numbers come first, so they are known before the first user is read.
+     */
+    static void writeSnapshot(Writer out, List<Users.User> users, long generation, long folded, boolean pretty,
+                              UserWritten afterUser) throws IOException {
+        JsonWriter writer = writer(out, pretty);
+        writer.beginObject();
+        writer.name("generation").value(generation);
+        writer.name("folded").value(folded);
+        writer.name("users");
+        writeArray(writer, users, afterUser);
+        writer.endObject();
+        writer.flush();
+    }
+
+    private static JsonWriter writer(Writer out, boolean pretty) {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setSerializeNulls(true);
+        if (pretty) {
+            writer.setIndent("  ");
+        }
+        return writer;
+    }
+
+    private static void writeArray(JsonWriter writer, List<Users.User> users, UserWritten afterUser) throws IOException {
+        writer.beginArray();
+        for (Users.User u : users) {
+            writeUser(writer, u);
+            afterUser.run();
+        }
+        writer.endArray();
+    }
+
+    static Users.User readUser(JsonReader reader) throws IOException {
+        long id = 0;
+        String username = null, name = null, role = null, password = null, email = null;
+        List<Users.Account> accounts = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id" -> id = reader.nextLong();
+                case "username" -> username = nextString(reader);
+                case "name" -> name = nextString(reader);
+                case "role" -> role = nextString(reader);
+                case "password" -> password = nextString(reader);
+                case "email" -> email = nextString(reader);
+                case "accounts" -> accounts = readAccounts(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Users.User(id, username, name, role, password, email, accounts);
+    }
+
+    static Users.Transaction readTransaction(JsonReader reader) throws IOException {
+        long date = 0, amount = 0, recipientId = 0;
+        String details = null, toAccount = null, fromAccount = null, recipientName = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "date" -> date = reader.nextLong();
+                case "amount" -> amount = nextCents(reader);
+                case "details" -> details = nextString(reader);
+                case "to_account" -> toAccount = nextString(reader);
+                case "from_account" -> fromAccount = nextString(reader);
+                case "recipient_id" -> recipientId = reader.nextLong();
+                case "recipient_name" -> recipientName = nextString(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Users.Transaction(date, amount, details, toAccount, fromAccount, recipientId, recipientName);
+    }
+
+    static void writeUser(JsonWriter writer, Users.User u) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(u.id());
+        writer.name("username").value(u.username());
+        writer.name("name").value(u.name());
+        writer.name("role").value(u.role());
+        writer.name("password").value(u.password());
+        writer.name("email").value(u.email());
+        writer.name("accounts");
+        if (u.accounts() == null) {
+            writer.nullValue();
+        } else {
+            writer.beginArray();
+            for (Users.Account a : u.accounts()) {
+                writeAccount(writer, a);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    static void writeTransaction(JsonWriter writer, Users.Transaction t) throws IOException {
+        writer.beginObject();
+        writer.name("date").value(t.date());
+        writer.name("amount");
+        writeCents(writer, t.amountCents());
+        writer.name("details").value(t.details());
+        writer.name("to_account").value(t.to_account());
+        writer.name("from_account").value(t.from_account());
+        writer.name("recipient_id").value(t.recipient_id());
+        writer.name("recipient_name").value(t.recipient_name());
+        writer.endObject();
+    }
+
+    private static List<Users.Account> readAccounts(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<Users.Account> accounts = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            accounts.add(readAccount(reader));
+        }
+        reader.endArray();
+        return accounts;
+    }
+
+    private static Users.Account readAccount(JsonReader reader) throws IOException {
+        String number = null, type = null;
+        long balance = 0;
+        List<Users.Transaction> transactions = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "number" -> number = nextString(reader);
+                case "type" -> type = nextString(reader);
+                case "balance" -> balance = nextCents(reader);
+                case "transactions" -> transactions = readTransactions(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Users.Account(number, type, balance, transactions);
+    }
+
+    private static List<Users.Transaction> readTransactions(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<Users.Transaction> transactions = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            transactions.add(readTransaction(reader));
+        }
+        reader.endArray();
+        return transactions;
+    }
+
+    private static void writeAccount(JsonWriter writer, Users.Account a) throws IOException {
+        writer.beginObject();
+        writer.name("number").value(a.number());
+        writer.name("type").value(a.type());
+        writer.name("balance");
+        writeCents(writer, a.balanceCents());
+        writer.name("transactions");
+        if (a.transactions() == null) {
+            writer.nullValue();
+        } else {
+            writer.beginArray();
+            for (Users.Transaction t : a.transactions()) {
+                writeTransaction(writer, t);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /** Write cents as an exact decimal number, e.g. {@code 525.00}. */
+    static void writeCents(JsonWriter writer, long cents) throws IOException {
+        writer.jsonValue(Money.format(cents));
+    }
+
+    /**
+     * Read a decimal amount as cents. Files written while the records held doubles may have
+     * amounts like {@code 2.5E7}; those are rounded to the nearest cent.
+     */
+    static long nextCents(JsonReader reader) throws IOException {
+        String text = reader.nextString();
+        try {
+            return Money.parse(text);
+        } catch (NumberFormatException e) {
+            return Money.cents(Double.parseDouble(text));
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,347 @@
+package bank.user;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Write-ahead log of ledger mutations and user changes made through {@link Users}, kept as
+ * numbered delta segments next to the snapshot ({@code <snapshot>.delta-000001}, ...), one
+ * compact JSON entry per line. Only the newest segment is appended to; {@link #roll()} seals it
+ * and starts the next.
+ * <p>
+ * Every snapshot records the number of the last segment folded into it, in the same file, so
+ * the two can't disagree after a crash. Recovery loads the snapshot and replays the segments
+ * after that one, so it reads at most the deltas written since the last compaction. Segments
+ * are only deleted once a snapshot on disk covers them.
+ */
+final class UsersJournal {
+
+    private static final Gson GSON = UsersCodec.GSON.newBuilder()
+            .registerTypeAdapter(Entry.class, new EntryAdapter().nullSafe())
+            .create();
+    private static final Logger LOGGER = Logger.getLogger(UsersJournal.class.getName());
+
+    static final String POST = "post";
+    static final String PUT = "put";
+    static final String REMOVE = "remove";
+
+    /**
+     * One journaled mutation.
+     * A {@code post} entry appends {@code tx} to {@code account} of {@code user} and sets its balance, in cents.
+     * A {@code put} entry adds {@code value}, or replaces the user with its id; a {@code remove}
+     * entry removes {@code user}.
+     */
+    record Entry(String op, long user, String account, long balance, Users.Transaction tx, Users.User value) {
+
+        static Entry post(long user, String account, long balance, Users.Transaction tx) {
+            return new Entry(POST, user, account, balance, tx, null);
+        }
+
+        static Entry put(Users.User value) {
+            return new Entry(PUT, value.id(), null, 0, null, value);
+        }
+
+        static Entry remove(long user) {
+            return new Entry(REMOVE, user, null, 0, null, null);
+        }
+    }
+
+    /**
+     * Writes the balance as a decimal, like the snapshot, so segments written while balances
+     * were doubles replay unchanged.
+     */
+    private static final class EntryAdapter extends TypeAdapter<Entry> {
+
+        private final TypeAdapter<Users.Transaction> transactions = UsersCodec.GSON.getAdapter(Users.Transaction.class);
+        private final TypeAdapter<Users.User> users = UsersCodec.GSON.getAdapter(Users.User.class);
+
+        @Override
+        public void write(JsonWriter writer, Entry e) throws IOException {
+            writer.beginObject();
+            writer.name("op").value(e.op());
+            writer.name("user").value(e.user());
+            writer.name("account").value(e.account());
+            writer.name("balance");
+            UsersCodec.writeCents(writer, e.balance());
+            writer.name("tx");
+            transactions.write(writer, e.tx());
+            writer.name("value");
+            users.write(writer, e.value());
+            writer.endObject();
+        }
+
+        @Override
+        public Entry read(JsonReader reader) throws IOException {
+            String op = null, account = null;
+            long user = 0, balance = 0;
+            Users.Transaction tx = null;
+            Users.User value = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "op" -> op = reader.nextString();
+                    case "user" -> user = reader.nextLong();
+                    case "account" -> {
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            account = reader.nextString();
+                        }
+                    }
+                    case "balance" -> balance = UsersCodec.nextCents(reader);
+                    case "tx" -> tx = transactions.read(reader);
+                    case "value" -> value = users.read(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Entry(op, user, account, balance, tx, value);
+        }
+    }
+
+    private final Path snapshot;
+    private volatile boolean bound;
+    // Only touched on the writer thread once the journal is in use
+    private long active;
+    private FileChannel channel;
+    private int entries;
+    private int sealed;
+
+    UsersJournal(Path snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    static Path deltaFile(Path snapshot, long seq) {
+        return snapshot.resolveSibling(String.format("%s.delta-%06d", snapshot.getFileName(), seq));
+    }
+
+    Path snapshot() {
+        return snapshot;
+    }
+
+    /** @return true once the deltas line up with the snapshot on disk, so deltas may be appended */
+    boolean isBound() {
+        return bound;
+    }
+
+    /** @return number of entries in the active delta segment */
+    int size() {
+        return entries;
+    }
+
+    /** @return number of sealed delta segments found by the last {@link #replay(long, Consumer)} */
+    int sealed() {
+        return sealed;
+    }
+
+    /**
+     * Append entries to the active segment as a single write and force them to disk.
+     * Entries of one call (e.g. both legs of a transfer) land in the same write.
+     * A failed append unbinds the journal until the next snapshot.
+     */
+    void append(List<Entry> batch) throws IOException {
+        if (!bound) {
+            throw new IllegalStateException("Journal of " + snapshot + " is not bound to a snapshot");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : batch) {
+            sb.append(GSON.toJson(e)).append('\n');
+        }
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(deltaFile(snapshot, active),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // The tail is unknown now; the next snapshot folds this segment
+            bound = false;
+            throw e;
+        }
+        entries += batch.size();
+    }
+
+    /**
+     * Seal the active segment; later appends go to the next one.
+     *
+     * @return the number of the sealed segment, which a snapshot cut at this point covers
+     */
+    long roll() throws IOException {
+        if (active == 0) {
+            active = lastDelta() + 1;
+        }
+        closeChannel();
+        long done = active;
+        active++;
+        entries = 0;
+        return done;
+    }
+
+    /**
+     * The snapshot now on disk holds every delta up to {@code folded}: delete those deltas and
+     * accept appends again.
+     */
+    void checkpoint(long folded) throws IOException {
+        for (long seq : deltas()) {
+            if (seq <= folded) {
+                Files.deleteIfExists(deltaFile(snapshot, seq));
+            }
+        }
+        bound = true;
+    }
+
+    /** Forget the journal, e.g. when the journaled mode is switched off. */
+    void discard() throws IOException {
+        closeChannel();
+        for (long seq : deltas()) {
+            Files.deleteIfExists(deltaFile(snapshot, seq));
+        }
+        bound = false;
+        active = 0;
+        entries = 0;
+    }
+
+    /** Release the active segment, e.g. before switching to another snapshot file. */
+    void close() throws IOException {
+        closeChannel();
+    }
+
+    /**
+     * Replay the deltas written after the snapshot just loaded, oldest first, and bind the journal
+     * to it. A torn tail of the newest delta is truncated; a missing or corrupt older delta stops
+     * the replay and leaves the journal unbound, so the next change writes a full snapshot.
+     *
+     * @param folded the last delta the snapshot holds, as recorded in it
+     * @param apply receives each entry in write order
+     * @return the number of replayed entries
+     */
+    int replay(long folded, Consumer<Entry> apply) throws IOException {
+        closeChannel();
+        bound = false;
+        active = 0;
+        entries = 0;
+        sealed = 0;
+
+        List<Long> pending = new ArrayList<>();
+        for (long seq : deltas()) {
+            if (seq <= folded) {
+                // Left over from a crash between writing the snapshot and the cleanup
+                Files.deleteIfExists(deltaFile(snapshot, seq));
+            } else {
+                pending.add(seq);
+            }
+        }
+
+        int replayed = 0;
+        long next = folded + 1;
+        for (int i = 0; i < pending.size(); i++) {
+            long seq = pending.get(i);
+            if (seq != next) {
+                LOGGER.warning("Stopping delta replay of " + snapshot + ": segment " + next + " is missing");
+                return replayed;
+            }
+            boolean newest = i == pending.size() - 1;
+            int count = replaySegment(deltaFile(snapshot, seq), newest, apply);
+            if (count < 0) {
+                return replayed;
+            }
+            replayed += count;
+            if (newest) {
+                entries = count;
+            } else {
+                sealed++;
+            }
+            next++;
+        }
+
+        active = pending.isEmpty() ? next : next - 1;
+        bound = true;
+        return replayed;
+    }
+
+    /**
+     * @return entries replayed, or -1 if a sealed segment is corrupt
+     */
+    private int replaySegment(Path file, boolean newest, Consumer<Entry> apply) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int start = 0;
+        int count = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            try {
+                apply.accept(GSON.fromJson(new String(bytes, start, i - start, StandardCharsets.UTF_8), Entry.class));
+            } catch (JsonParseException e) {
+                break;
+            }
+            count++;
+            start = i + 1;
+        }
+        if (start < bytes.length) {
+            if (!newest) {
+                LOGGER.warning("Stopping delta replay at corrupt entry in " + file);
+                return -1;
+            }
+            // Drop the torn tail so later appends start on a line boundary
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(start);
+            }
+        }
+        return count;
+    }
+
+    /** @return numbers of the delta segments on disk, ascending */
+    private List<Long> deltas() throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        Path dir = snapshot.toAbsolutePath().getParent();
+        String prefix = snapshot.getFileName() + ".delta-";
+        if (!Files.isDirectory(dir)) {
+            return seqs;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path f : files) {
+                try {
+                    seqs.add(Long.parseLong(f.getFileName().toString().substring(prefix.length())));
+                } catch (NumberFormatException ignored) {
+                    // e.g. a temp file
+                }
+            }
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    /** @return number of the newest delta segment on disk, 0 if there is none */
+    long lastDelta() throws IOException {
+        List<Long> seqs = deltas();
+        return seqs.isEmpty() ? 0 : seqs.get(seqs.size() - 1);
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package bank.user;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sharded JSON layout: users are spread over hash buckets by id, one JSON file per bucket,
+ * plus a {@code manifest.json} listing the shards. Only buckets holding a changed user are
+ * rewritten; the manifest is replaced last, after all shard files are in place. It also
+ * records the last journal delta the shards hold.
+ */
+final class UsersShards {
+
+    static final String MANIFEST = "manifest.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Logger LOGGER = Logger.getLogger(UsersShards.class.getName());
+
+    /** Contents of {@code manifest.json}; manifests written before {@code folded} existed read as 0. */
+    record Manifest(int buckets, long folded, List<Shard> shards) {}
+
+    /** One shard file and the number of users in it. */
+    record Shard(String file, int users) {}
+
+    private final Path dir;
+    private int buckets;
+    private long folded;
+
+    UsersShards(Path dir, int buckets) {
+        this.dir = dir;
+        this.buckets = buckets;
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    Path manifest() {
+        return dir.resolve(MANIFEST);
+    }
+
+    /** @return the last journal delta folded into the shards, as of the last {@link #load()} */
+    long folded() {
+        return folded;
+    }
+
+    int bucket(long userId) {
+        return Math.floorMod(Long.hashCode(userId), buckets);
+    }
+
+    /**
+     * Read every shard listed in the manifest, in parallel. The bucket count of the manifest
+     * replaces the configured one, so later writes keep users in the same files.
+     *
+     * @param damaged receives each shard file that could not be read in full or holds fewer
+     *                users than the manifest says; the users in front of the damage are kept
+     * @return all users, ordered by id
+     * @throws IOException if the manifest can't be read
+     */
+    List<Users.User> load(Consumer<Path> damaged) throws IOException {
+        Manifest manifest;
+        try (Reader reader = Files.newBufferedReader(manifest())) {
+            manifest = GSON.fromJson(reader, Manifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid shard manifest " + manifest(), e);
+        }
+        if (manifest == null || manifest.shards() == null) {
+            throw new IOException("Invalid shard manifest " + manifest());
+        }
+        buckets = manifest.buckets();
+        folded = manifest.folded();
+
+        Set<Path> failed = ConcurrentHashMap.newKeySet();
+        List<Users.User> users = manifest.shards().parallelStream()
+                .map(shard -> readShard(shard, failed))
+                .flatMap(List::stream)
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        failed.stream().sorted().forEach(damaged);
+        users.sort(Comparator.comparingLong(Users.User::id));
+        return users;
+    }
+
+    /**
+     * Rewrite the shards of the given users, then the manifest.
+     *
+     * @param users every user, not only the changed ones (a shard file holds its whole bucket)
+     * @param dirty ids of changed users, or null to rewrite every shard
+     * @param folded the last journal delta the users hold
+     */
+    void write(List<Users.User> users, Set<Long> dirty, long folded, boolean pretty) throws IOException {
+        Files.createDirectories(dir);
+        boolean all = dirty == null || !Files.exists(manifest());
+
+        List<List<Users.User>> byBucket = new ArrayList<>(buckets);
+        for (int b = 0; b < buckets; b++) {
+            byBucket.add(new ArrayList<>());
+        }
+        for (Users.User u : users) {
+            byBucket.get(bucket(u.id())).add(u);
+        }
+
+        boolean[] rewrite = new boolean[buckets];
+        if (all) {
+            Arrays.fill(rewrite, true);
+        } else {
+            for (long id : dirty) {
+                rewrite[bucket(id)] = true;
+            }
+        }
+
+        List<Shard> shards = new ArrayList<>(buckets);
+        for (int b = 0; b < buckets; b++) {
+            List<Users.User> bucket = byBucket.get(b);
+            Shard shard = new Shard(shardFile(b), bucket.size());
+            shards.add(shard);
+            if (rewrite[b]) {
+                AtomicFiles.write(dir.resolve(shard.file()), ch -> {
+                    Writer writer = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+                    UsersCodec.write(writer, bucket, pretty);
+                    writer.flush();
+                });
+            }
+        }
+
+        String manifest = GSON.toJson(new Manifest(buckets, folded, shards));
+        AtomicFiles.write(manifest(), ch -> {
+            Writer writer = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+            writer.write(manifest);
+            writer.flush();
+        });
+        AtomicFiles.forceDirectory(dir.toAbsolutePath());
+    }
+
+    private List<Users.User> readShard(Shard shard, Set<Path> failed) {
+        Path file = dir.resolve(shard.file());
+        List<Users.User> users = new ArrayList<>(shard.users());
+        try (Reader reader = Files.newBufferedReader(file)) {
+            UsersCodec.read(reader, users::add);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not read shard " + file.toAbsolutePath() + " past " + users.size() + " users", e);
+            failed.add(file);
+            return users;
+        }
+        if (users.size() != shard.users()) {
+            LOGGER.severe("Shard " + file.toAbsolutePath() + " holds " + users.size() + " users, the manifest says " + shard.users());
+            failed.add(file);
+        }
+        return users;
+    }
+
+    private static String shardFile(int bucket) {
+        return String.format("shard-%03d.json", bucket);
+    }
+}
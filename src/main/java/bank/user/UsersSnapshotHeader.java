@@ -0,0 +1,252 @@
+package bank.user;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Integrity header of a snapshot file, kept next to it as {@code <snapshot>.header}: format
+ * version, record counts and a CRC32C per block. Every write draws a new generation number and
+ * records it both here and inside the snapshot, at the front of the JSON object or in the binary
+ * header, so the header only vouches for the file it was written with. A header left behind by
+ * an earlier write is ignored rather than failing a good file, whatever the file times say.
+ * <p>
+ * JSON blocks end on a user boundary, so the users of the blocks in front of a damaged one can
+ * still be read; binary blocks have a fixed size. Validation streams the file through CRC32C
+ * without decoding anything.
+ */
+final class UsersSnapshotHeader {
+
+    static final int VERSION = 2;
+    static final int JSON_BLOCK_BYTES = 64 << 10;
+    static final int BINARY_BLOCK_BYTES = 1 << 20;
+    static final String JSON = "users-json";
+    static final String BINARY = "users-binary";
+
+    private static final Gson GSON = new Gson();
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    /** A block ends at byte {@code end} (exclusive) and holds {@code users} complete users. */
+    record Block(long end, int users, int crc) {}
+
+    /** Contents of the header file. */
+    record Header(String format, int version, long generation, long bytes, int users, List<Block> blocks) {}
+
+    private UsersSnapshotHeader() {}
+
+    /** @return a generation for the next snapshot write, never 0 */
+    static long newGeneration() {
+        long generation;
+        do {
+            generation = ThreadLocalRandom.current().nextLong();
+        } while (generation == 0);
+        return generation;
+    }
+
+    static Path file(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".header");
+    }
+
+    /**
+     * @return the header written with the current snapshot file, or null if there is none or its
+     *         generation isn't the one recorded in the file
+     */
+    static Header read(Path snapshot) throws IOException {
+        Path file = file(snapshot);
+        if (!Files.exists(file) || !Files.exists(snapshot)) {
+            return null;
+        }
+        Header header;
+        try {
+            header = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), Header.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+        if (header == null || header.blocks() == null || header.version() != VERSION
+                || header.generation() == 0 || header.generation() != generation(snapshot, header.format())) {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * @return the generation recorded in the snapshot, 0 if it holds none or its front is unreadable
+     */
+    private static long generation(Path snapshot, String format) throws IOException {
+        if (BINARY.equals(format)) {
+            return UsersBinarySnapshot.generation(snapshot);
+        }
+        try (Reader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+            return UsersCodec.readGeneration(reader);
+        } catch (EOFException | MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Replace the header file; call once the snapshot carrying the header's generation is in place. */
+    static void write(Path snapshot, Header header) throws IOException {
+        byte[] bytes = GSON.toJson(header).getBytes(StandardCharsets.UTF_8);
+        AtomicFiles.write(file(snapshot), ch -> {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        });
+    }
+
+    static void delete(Path snapshot) throws IOException {
+        Files.deleteIfExists(file(snapshot));
+    }
+
+    /**
+     * Check every block in one sequential pass.
+     *
+     * @return the number of leading blocks that are intact; {@code blocks().size()} if the file is good
+     */
+    static int validate(Path snapshot, Header header) throws IOException {
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer buf = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+            CRC32C crc = new CRC32C();
+            long start = 0;
+            for (int i = 0; i < header.blocks().size(); i++) {
+                Block block = header.blocks().get(i);
+                if (block.end() > size || block.end() < start) {
+                    return i;
+                }
+                crc.reset();
+                long position = start;
+                while (position < block.end()) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buf.capacity(), block.end() - position));
+                    int n = ch.read(buf, position);
+                    if (n < 0) {
+                        return i;
+                    }
+                    buf.flip();
+                    crc.update(buf);
+                    position += n;
+                }
+                if ((int) crc.getValue() != block.crc()) {
+                    return i;
+                }
+                start = block.end();
+            }
+            if (start != size || start != header.bytes()) {
+                // Bytes past the last block: the tail can't be trusted
+                return Math.max(0, header.blocks().size() - 1);
+            }
+            return header.blocks().size();
+        }
+    }
+
+    /**
+     * Checksum a binary snapshot just written through {@code ch} in fixed-size blocks.
+     *
+     * @param generation the generation written into the snapshot
+     */
+    static Header ofChannel(FileChannel ch, int users, long generation) throws IOException {
+        long size = ch.size();
+        List<Block> blocks = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocateDirect(BINARY_BLOCK_BYTES);
+        CRC32C crc = new CRC32C();
+        for (long start = 0; start < size; ) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), size - start));
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, start + buf.position()) < 0) {
+                    throw new IOException("Snapshot shrank while being checksummed");
+                }
+            }
+            buf.flip();
+            crc.reset();
+            crc.update(buf);
+            start += buf.limit();
+            blocks.add(new Block(start, 0, (int) crc.getValue()));
+        }
+        return new Header(BINARY, VERSION, generation, size, users, blocks);
+    }
+
+    /**
+     * Output stream that counts and checksums what passes through it, cutting a block at the
+     * first user boundary after {@link #JSON_BLOCK_BYTES}. {@link #flush()} does not reach the
+     * underlying stream, so a writer on top can be flushed after every user cheaply.
+     */
+    static final class Checksummer extends OutputStream {
+
+        private final OutputStream out;
+        private final CRC32C crc = new CRC32C();
+        private final List<Block> blocks = new ArrayList<>();
+        private long position;
+        private long blockStart;
+        private int blockUsers;
+        private int users;
+
+        Checksummer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void flush() {
+            // Deliberately not forwarded, see the class comment
+        }
+
+        /** Call after the bytes of a complete user went through. */
+        void endUser() {
+            users++;
+            blockUsers++;
+            if (position - blockStart >= JSON_BLOCK_BYTES) {
+                cut();
+            }
+        }
+
+        /**
+         * Close the last block and flush the underlying stream.
+         *
+         * @param generation the generation written into the JSON snapshot
+         */
+        Header finish(long generation) throws IOException {
+            if (position > blockStart || blocks.isEmpty()) {
+                cut();
+            }
+            out.flush();
+            return new Header(JSON, VERSION, generation, position, users, List.copyOf(blocks));
+        }
+
+        private void cut() {
+            blocks.add(new Block(position, blockUsers, (int) crc.getValue()));
+            crc.reset();
+            blockStart = position;
+            blockUsers = 0;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package bank.user.repository;
+
+/**
+ * Bloom filter over long keys, used by {@link LsmStore} segments to skip files that
+ * certainly don't hold a key. About 10 bits per key gives ~1% false positives.
+ */
+final class BloomFilter {
+
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+
+    BloomFilter(int expectedKeys) {
+        this(new long[Math.max(1, (expectedKeys * 10 + 63) / 64)]);
+    }
+
+    BloomFilter(long[] bits) {
+        this.bits = bits;
+    }
+
+    long[] bits() {
+        return bits;
+    }
+
+    void add(long key) {
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(long key) {
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, size);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // SplitMix64 finalizer, so consecutive ids spread over the whole filter
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,5 +1,6 @@
 package bank.user.repository;
 
+import bank.user.ChangeLog;
 import bank.user.Users;
 
 import java.util.List;
@@ -17,12 +18,14 @@ public class JsonUserRepository implements UserRepository {
 
     @Override
     public void save() {
-        Users.save();
+        // Memory is already up to date; the background writer makes it durable
+        Users.saveAsync();
     }
 
     @Override
     public List<Users.User> getAll() {
-        return Users.get();
+        // Read-only and unaffected by postings running meanwhile
+        return Users.snapshot().users();
     }
 
     @Override
@@ -30,24 +33,27 @@ public class JsonUserRepository implements UserRepository {
         return Users.get(id);
     }
 
+    @Override
+    public Users.User getByUsername(String username) {
+        return Users.byUsername(username);
+    }
+
     @Override
     public void add(Users.User user) {
         Users.add(user);
-        Users.save();
+        save();
     }
 
     @Override
     public void update(Users.User updatedUser) {
-        List<Users.User> allUsers = getAll();
-        for (int i = 0; i < allUsers.size(); i++) {
-            if (allUsers.get(i).id() == updatedUser.id()) {
-                allUsers.set(i, updatedUser);
-                save();
-                return;
-            }
+        if (!Users.replace(updatedUser)) {
+            throw new IllegalArgumentException("User with id " + updatedUser.id() + " not found.");
         }
-        throw new IllegalArgumentException("User with id " + updatedUser.id() + " not found.");
+        save();
     }
 
-
+    @Override
+    public ChangeLog changes() {
+        return Users.changes();
+    }
 }
\ No newline at end of file
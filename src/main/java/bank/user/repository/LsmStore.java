@@ -0,0 +1,365 @@
+package bank.user.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small embedded log-structured key/value store for long keys, stored in one directory:
+ * <ul>
+ *   <li>{@code wal.log}: every put since the last flush, replayed on open;</li>
+ *   <li>{@code seg-NNNNNN.dat}: immutable sorted {@link Segment}s, each with its own index and bloom filter;</li>
+ *   <li>{@code MANIFEST}: names of the live segments, newest first, replaced atomically.</li>
+ * </ul>
+ * Puts go to the WAL and an in-memory sorted memtable. A full memtable is written out as a new
+ * segment; once enough segments pile up a background thread merges them into one, so lookups
+ * touch few files. Lookups check the memtable, then the segments newest first.
+ */
+public final class LsmStore implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(LsmStore.class.getName());
+
+    static final String WAL = "wal.log";
+    static final String MANIFEST = "MANIFEST";
+
+    private final Path dir;
+    private final long memtableLimit;
+    private final int compactionTrigger;
+
+    private final Object writeLock = new Object();
+    // Guards swapping and closing segments; lookups hold the read side
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "lsm-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile ConcurrentSkipListMap<Long, byte[]> memtable = new ConcurrentSkipListMap<>();
+    private long memtableBytes;
+    private volatile List<Segment> segments = List.of();
+    private FileChannel wal;
+    private int nextSegment;
+    private Future<?> compaction;
+
+    private LsmStore(Path dir, long memtableLimit, int compactionTrigger) {
+        this.dir = dir;
+        this.memtableLimit = memtableLimit;
+        this.compactionTrigger = compactionTrigger;
+    }
+
+    /**
+     * Open the store in {@code dir}, creating it if needed.
+     *
+     * @param memtableLimit bytes of values kept in memory before they are flushed to a segment
+     * @param compactionTrigger number of segments that starts a background compaction
+     */
+    public static LsmStore open(Path dir, long memtableLimit, int compactionTrigger) throws IOException {
+        LsmStore store = new LsmStore(dir, memtableLimit, compactionTrigger);
+        store.recover();
+        return store;
+    }
+
+    public static LsmStore open(Path dir) throws IOException {
+        return open(dir, 4 << 20, 4);
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * @return the value stored under {@code key}, or null
+     */
+    public byte[] get(long key) throws IOException {
+        byte[] value = memtable.get(key);
+        if (value != null) {
+            return value;
+        }
+        segmentsLock.readLock().lock();
+        try {
+            for (Segment s : segments) {
+                value = s.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Store {@code value} under {@code key}. The put is in the WAL when this returns but only
+     * forced to disk by {@link #sync()}.
+     */
+    public void put(long key, byte[] value) throws IOException {
+        synchronized (writeLock) {
+            ByteBuffer record = ByteBuffer.allocate(12 + value.length);
+            record.putLong(key).putInt(value.length).put(value).flip();
+            while (record.hasRemaining()) {
+                wal.write(record);
+            }
+            byte[] old = memtable.put(key, value);
+            memtableBytes += value.length - (old == null ? 0 : old.length);
+            if (memtableBytes >= memtableLimit) {
+                flush();
+            }
+        }
+    }
+
+    /** Force the WAL to disk. */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            wal.force(false);
+        }
+    }
+
+    /** @return true if the store holds no keys at all */
+    public boolean isEmpty() {
+        return memtable.isEmpty() && segments.isEmpty();
+    }
+
+    /**
+     * @return every key with its newest value, ordered by key
+     */
+    public NavigableMap<Long, byte[]> scan() throws IOException {
+        TreeMap<Long, byte[]> all = new TreeMap<>();
+        segmentsLock.readLock().lock();
+        try {
+            List<Segment> current = segments;
+            for (int i = current.size() - 1; i >= 0; i--) {
+                current.get(i).forEach(all::put);
+            }
+            all.putAll(memtable);
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        return all;
+    }
+
+    /**
+     * Write the memtable out as a new segment and start a fresh WAL.
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (memtable.isEmpty()) {
+                return;
+            }
+            wal.force(false);
+            Segment segment = Segment.write(dir.resolve(segmentName(nextSegment++)), memtable);
+
+            segmentsLock.writeLock().lock();
+            try {
+                List<Segment> updated = new ArrayList<>(segments.size() + 1);
+                updated.add(segment);
+                updated.addAll(segments);
+                writeManifest(updated);
+                segments = List.copyOf(updated);
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+
+            // Everything in the WAL now lives in the segment
+            memtable = new ConcurrentSkipListMap<>();
+            memtableBytes = 0;
+            wal.truncate(0);
+            wal.force(true);
+
+            if (segments.size() >= compactionTrigger) {
+                // Queued behind a running compaction, so segments flushed meanwhile get merged too
+                compaction = compactor.submit(this::compact);
+            }
+        }
+    }
+
+    /** Wait for a running compaction, if any, to finish. */
+    void awaitCompaction() throws Exception {
+        Future<?> pending;
+        synchronized (writeLock) {
+            pending = compaction;
+        }
+        if (pending != null) {
+            pending.get();
+        }
+    }
+
+    /** @return number of live segment files */
+    int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            awaitCompaction();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Compaction failed while closing " + dir, e);
+        }
+        synchronized (writeLock) {
+            wal.force(false);
+            wal.close();
+        }
+        segmentsLock.writeLock().lock();
+        try {
+            for (Segment s : segments) {
+                s.close();
+            }
+            segments = List.of();
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merge every segment present when the compaction starts into one. Segments flushed in the
+     * meantime are newer and stay in front of the merged one.
+     */
+    private void compact() {
+        List<Segment> inputs = segments;
+        if (inputs.size() < Math.max(2, compactionTrigger)) {
+            return;
+        }
+        try {
+            TreeMap<Long, byte[]> merged = new TreeMap<>();
+            for (int i = inputs.size() - 1; i >= 0; i--) {
+                inputs.get(i).forEach(merged::put);
+            }
+            int number;
+            synchronized (writeLock) {
+                number = nextSegment++;
+            }
+            Segment output = Segment.write(dir.resolve(segmentName(number)), merged);
+
+            segmentsLock.writeLock().lock();
+            try {
+                List<Segment> updated = new ArrayList<>(segments);
+                updated.removeAll(inputs);
+                updated.add(output);
+                writeManifest(updated);
+                segments = List.copyOf(updated);
+                for (Segment s : inputs) {
+                    s.delete();
+                }
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Compaction of " + dir + " failed", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(dir);
+
+        List<String> live = new ArrayList<>();
+        Path manifest = dir.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    live.add(line.strip());
+                }
+            }
+        }
+
+        List<Segment> opened = new ArrayList<>(live.size());
+        for (String name : live) {
+            opened.add(Segment.open(dir.resolve(name)));
+            nextSegment = Math.max(nextSegment, segmentNumber(name) + 1);
+        }
+        segments = List.copyOf(opened);
+
+        // Segments not in the manifest are leftovers of an interrupted flush or compaction
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*.dat")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                nextSegment = Math.max(nextSegment, segmentNumber(name) + 1);
+                if (!live.contains(name)) {
+                    Files.delete(f);
+                }
+            }
+        }
+
+        wal = FileChannel.open(dir.resolve(WAL), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayWal();
+    }
+
+    private void replayWal() throws IOException {
+        long size = wal.size();
+        ByteBuffer head = ByteBuffer.allocate(12);
+        long position = 0;
+        while (position + 12 <= size) {
+            head.clear();
+            readFully(head, position);
+            long key = head.getLong(0);
+            int length = head.getInt(8);
+            if (length < 0 || position + 12 + length > size) {
+                break;
+            }
+            ByteBuffer value = ByteBuffer.allocate(length);
+            readFully(value, position + 12);
+            byte[] old = memtable.put(key, value.array());
+            memtableBytes += length - (old == null ? 0 : old.length);
+            position += 12 + length;
+        }
+        if (position < size) {
+            LOGGER.warning("Dropping torn tail of " + dir.resolve(WAL));
+            wal.truncate(position);
+        }
+        wal.position(position);
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (wal.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of " + dir.resolve(WAL));
+            }
+        }
+    }
+
+    private void writeManifest(List<Segment> live) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : live) {
+            sb.append(s.file().getFileName()).append('\n');
+        }
+        Path manifest = dir.resolve(MANIFEST);
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String segmentName(int number) {
+        return String.format("seg-%06d.dat", number);
+    }
+
+    private static int segmentNumber(String name) {
+        return Integer.parseInt(name.substring(4, name.length() - 4));
+    }
+}
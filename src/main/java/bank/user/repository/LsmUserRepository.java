@@ -0,0 +1,175 @@
+package bank.user.repository;
+
+import bank.user.ChangeLog;
+import bank.user.UsernameIndex;
+import bank.user.Users;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * {@link UserRepository} on an {@link LsmStore} keyed by user id. Adding or updating a user
+ * writes that one user instead of the whole file, and a lookup by id reads a single record.
+ * An empty store is seeded from the JSON users the first time it is loaded.
+ */
+public class LsmUserRepository implements UserRepository {
+
+    private static final Logger LOGGER = Logger.getLogger(LsmUserRepository.class.getName());
+    private static final Gson GSON = Users.gson();
+
+    public static final Path DEFAULT_DIR = Path.of("data/users.lsm");
+
+    private static LsmStore defaultStore;
+    private static final ChangeLog DEFAULT_CHANGES = new ChangeLog(10_000);
+    // One username index per store, so every repository on a store sees the others' writes
+    private static final Map<LsmStore, UsernameIndex> USERNAMES = new ConcurrentHashMap<>();
+
+    private final LsmStore store;
+    private final ChangeLog changes;
+
+    public LsmUserRepository() {
+        this(defaultStore(), DEFAULT_CHANGES);
+    }
+
+    public LsmUserRepository(LsmStore store) {
+        this(store, new ChangeLog(10_000));
+    }
+
+    /**
+     * @param changes change stream to publish to; repositories on the same store should share one
+     */
+    public LsmUserRepository(LsmStore store, ChangeLog changes) {
+        this.store = store;
+        this.changes = changes;
+        load();
+    }
+
+    // Every repository on the default directory shares one store, it owns the WAL
+    private static synchronized LsmStore defaultStore() {
+        if (defaultStore == null) {
+            try {
+                defaultStore = LsmStore.open(DEFAULT_DIR);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open " + DEFAULT_DIR.toAbsolutePath(), e);
+            }
+        }
+        return defaultStore;
+    }
+
+    @Override
+    public void load() {
+        if (!store.isEmpty()) {
+            return;
+        }
+        Users.load();
+        List<Users.User> users = Users.snapshot().users();
+        for (Users.User u : users) {
+            put(u);
+        }
+        save();
+        LOGGER.info("Imported " + users.size() + " users into " + store.dir().toAbsolutePath());
+    }
+
+    @Override
+    public void save() {
+        try {
+            store.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<Users.User> getAll() {
+        try {
+            List<Users.User> users = new ArrayList<>();
+            for (byte[] value : store.scan().values()) {
+                users.add(decode(value));
+            }
+            return users;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Users.User getById(long id) {
+        try {
+            byte[] value = store.get(id);
+            return value == null ? null : decode(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Users.User getByUsername(String username) {
+        Long id = usernames().get(username);
+        if (id == null) {
+            return null;
+        }
+        Users.User user = getById(id);
+        return user != null && username.equals(user.username()) ? user : null;
+    }
+
+    @Override
+    public void add(Users.User user) {
+        put(user);
+        save();
+        usernames().add(user);
+        changes.userAdded(user);
+    }
+
+    @Override
+    public void update(Users.User updatedUser) {
+        Users.User old = getById(updatedUser.id());
+        if (old == null) {
+            throw new IllegalArgumentException("User with id " + updatedUser.id() + " not found.");
+        }
+        put(updatedUser);
+        save();
+        if (!usernames().replace(old, updatedUser)) {
+            USERNAMES.remove(store);
+        }
+        changes.userReplaced(old, updatedUser);
+    }
+
+    /**
+     * Changes made through repositories on this store; they are not shared with {@link Users#changes()}.
+     */
+    @Override
+    public ChangeLog changes() {
+        return changes;
+    }
+
+    /** Built with one scan of the store the first time a repository on it looks up a username. */
+    private UsernameIndex usernames() {
+        return USERNAMES.computeIfAbsent(store, s -> {
+            UsernameIndex index = new UsernameIndex();
+            for (Users.User u : getAll()) {
+                index.add(u);
+            }
+            return index;
+        });
+    }
+
+    private void put(Users.User user) {
+        try {
+            store.put(user.id(), GSON.toJson(user).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Users.User decode(byte[] value) {
+        return GSON.fromJson(new String(value, StandardCharsets.UTF_8), Users.User.class);
+    }
+}
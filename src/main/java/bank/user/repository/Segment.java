@@ -0,0 +1,173 @@
+package bank.user.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable sorted segment file of an {@link LsmStore}.
+ * <pre>
+ * entries  count x (long key, int length, bytes), ascending by key
+ * index    count x (long key, long offset)
+ * bloom    int words, words x long
+ * trailer  long indexOffset, long bloomOffset, int count, int magic
+ * </pre>
+ * Opening reads the index and the bloom filter into memory; values are read on demand.
+ */
+final class Segment {
+
+    private static final int MAGIC = 0x4C534D31; // "LSM1"
+    private static final int TRAILER_BYTES = 24;
+
+    private final Path file;
+    private final FileChannel ch;
+    private final long[] keys;
+    private final long[] offsets;
+    private final BloomFilter bloom;
+
+    private Segment(Path file, FileChannel ch, long[] keys, long[] offsets, BloomFilter bloom) {
+        this.file = file;
+        this.ch = ch;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.bloom = bloom;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * Write a new segment from sorted entries and force it to disk.
+     */
+    static Segment write(Path file, NavigableMap<Long, byte[]> entries) throws IOException {
+        int count = entries.size();
+        long[] keys = new long[count];
+        long[] offsets = new long[count];
+        BloomFilter bloom = new BloomFilter(count);
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+            long offset = 0;
+            int i = 0;
+            for (Map.Entry<Long, byte[]> e : entries.entrySet()) {
+                keys[i] = e.getKey();
+                offsets[i] = offset;
+                bloom.add(e.getKey());
+                data.writeLong(e.getKey());
+                data.writeInt(e.getValue().length);
+                data.write(e.getValue());
+                offset += 12 + e.getValue().length;
+                i++;
+            }
+
+            long indexOffset = offset;
+            for (int j = 0; j < count; j++) {
+                data.writeLong(keys[j]);
+                data.writeLong(offsets[j]);
+            }
+            long bloomOffset = indexOffset + 16L * count;
+            long[] bits = bloom.bits();
+            data.writeInt(bits.length);
+            for (long word : bits) {
+                data.writeLong(word);
+            }
+            data.writeLong(indexOffset);
+            data.writeLong(bloomOffset);
+            data.writeInt(count);
+            data.writeInt(MAGIC);
+            data.flush();
+            out.force(true);
+        }
+        return open(file);
+    }
+
+    static Segment open(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            ByteBuffer trailer = read(ch, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            long bloomOffset = trailer.getLong();
+            int count = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("Not a segment file: " + file);
+            }
+
+            ByteBuffer index = read(ch, indexOffset, 16 * count);
+            long[] keys = new long[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = index.getLong();
+                offsets[i] = index.getLong();
+            }
+
+            int words = read(ch, bloomOffset, 4).getInt();
+            ByteBuffer bloomBuf = read(ch, bloomOffset + 4, 8 * words);
+            long[] bits = new long[words];
+            bloomBuf.asLongBuffer().get(bits);
+
+            return new Segment(file, ch, keys, offsets, new BloomFilter(bits));
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the value, or null if the key is not in this segment
+     */
+    byte[] get(long key) throws IOException {
+        if (!bloom.mightContain(key)) {
+            return null;
+        }
+        int i = Arrays.binarySearch(keys, key);
+        if (i < 0) {
+            return null;
+        }
+        int length = read(ch, offsets[i] + 8, 4).getInt();
+        return read(ch, offsets[i] + 12, length).array();
+    }
+
+    /** Visit every entry in key order. */
+    void forEach(BiConsumer<Long, byte[]> visitor) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            int length = read(ch, offsets[i] + 8, 4).getInt();
+            visitor.accept(keys[i], read(ch, offsets[i] + 12, length).array());
+        }
+    }
+
+    void close() throws IOException {
+        ch.close();
+    }
+
+    void delete() throws IOException {
+        ch.close();
+        Files.deleteIfExists(file);
+    }
+
+    private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
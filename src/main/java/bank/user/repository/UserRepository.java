@@ -1,5 +1,6 @@
 package bank.user.repository;
 
+import bank.user.ChangeLog;
 import bank.user.Users;
 import java.util.List;
 
@@ -8,6 +9,8 @@ public interface UserRepository {
     void save();                  // Save all memory → users.json
     List<Users.User> getAll();    // Get all users
     Users.User getById(long id);  // Get specific user
+    Users.User getByUsername(String username); // Through the username index, null if none
     void add(Users.User user);    // Add a new user
     void update(Users.User user);
+    ChangeLog changes();          // Ordered change events, resumable by sequence number
 }
@@ -1,5 +1,6 @@
 package bank.gui;
 
+import bank.Money;
 import bank.user.Users;
 import javafx.application.Application;
 import javafx.beans.property.ReadOnlyStringWrapper;
@@ -669,7 +670,7 @@ public class GUI extends Application {
         if (first != null) {
             acctTypeValue.setText(first.type());
             acctNumValue.setText(String.valueOf(first.number()));
-            balValue.setText("$ " + first.balance());
+            balValue.setText("$ " + Money.format(first.balanceCents()));
         } else {
             acctTypeValue.setText("-");
             acctNumValue.setText("-");
@@ -693,7 +694,7 @@ public class GUI extends Application {
                                 t.details(),
                                 String.valueOf(t.date()),
                                 accLabelForTransaction(first),
-                                formatAmount(t.amount())
+                                formatAmount(Money.amount(t.amountCents()))
                         )
                 );
             }
@@ -0,0 +1,78 @@
+package bank;
+
+import bank.user.Users;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+        for (long id = 1; id <= 120; id++) {
+            int count = id == 7 ? 3000 : (int) (id % 5);
+            List<Users.Transaction> txs = new ArrayList<>();
+            for (int t = 0; t < count; t++) {
+                txs.add(new Users.Transaction(20250101 + t % 3, t % 2 == 0 ? 1000 : -400, "Payment", "0", "A" + id, 0, "Shop"));
+            }
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account("A" + id, id % 3 == 0 ? "SAVINGS" : "CHECKING", id * 150, txs));
+            Users.add(new Users.User(id, "user" + id, "User " + id, "CUSTOMER", "pw", "u@email.com", accounts));
+        }
+    }
+
+    @Test
+    void testGroupedFiguresMatchTheRows() {
+        Map<Object, Aggregation.Summary> byType = Aggregation.over(Search.ACCOUNTS.all()).groupBy("type").of("balance").run();
+        assertEquals(List.of("CHECKING", "SAVINGS"), new ArrayList<>(byType.keySet()));
+
+        List<Users.Account> savings = Search.ACCOUNTS.where("type", "=", "SAVINGS").run();
+        Aggregation.Summary s = byType.get("SAVINGS");
+        assertEquals(savings.size(), s.count());
+        assertEquals(savings.stream().mapToLong(Users.Account::balanceCents).sum(), s.sum(), "Summed in cents");
+        assertEquals(450, s.min());
+        assertEquals(18000, s.max());
+        assertEquals((double) s.sum() / s.count(), s.average());
+        assertEquals("4.50", s.format(s.min()));
+
+        Aggregation.Summary deposits = Aggregation.over(Search.TRANSACTIONS.where("amount", ">", 0)).of("amount").total();
+        long expected = Search.TRANSACTIONS.where("amount", ">", 0).run().size();
+        assertEquals(expected, deposits.count());
+        assertEquals(1000 * expected, deposits.sum());
+
+        Aggregation.Summary none = Aggregation.over(Search.ACCOUNTS.where("balance", "<", 0)).of("balance").total();
+        assertEquals(0, none.count());
+        assertTrue(Double.isNaN(none.average()));
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.over(Search.ACCOUNTS.all()).of("type"));
+    }
+
+    @Test
+    void testParallelMatchesSequential() {
+        Map<Object, Aggregation.Summary> daily = Aggregation.over(Search.TRANSACTIONS.all()).groupBy("date").of("amount").run();
+        assertEquals(List.of(20250101L, 20250102L, 20250103L), new ArrayList<>(daily.keySet()));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Map<Object, Aggregation.Summary> parallel = Aggregation.over(Search.TRANSACTIONS.all())
+                    .groupBy("date").of("amount").parallel(pool).run();
+            // Whole-number amounts add up exactly in any order
+            assertEquals(daily, parallel);
+            assertEquals(Aggregation.over(Search.TRANSACTIONS.all()).total().count(),
+                    Aggregation.over(Search.TRANSACTIONS.all()).parallel(pool).total().count());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package bank;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void testParseAndFormat() {
+        assertEquals(1234, Money.parse("12.34"));
+        assertEquals(1250, Money.parse("12.5"));
+        assertEquals(1200, Money.parse(" 12 "));
+        assertEquals(-5, Money.parse("-0.05"));
+        assertEquals(50, Money.parse(".5"));
+        assertEquals(123456, Money.parse("$1,234.56"));
+        assertEquals(123456789, Money.parse("1,234,567.89"));
+        assertEquals(1234, Money.parse("x12.34y", 1, 6));
+
+        assertEquals("12.34", Money.format(1234));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("0.00", Money.format(0));
+        assertEquals("-92233720368547758.08", Money.format(Long.MIN_VALUE));
+        assertEquals(Long.MIN_VALUE, Money.parse(Money.format(Long.MIN_VALUE)));
+        assertEquals("balance: 1.50", Money.format(150, new StringBuilder("balance: ")).toString());
+
+        // The old split-based parser read "12.5" as 12.05
+        assertEquals(1250, Convert.balance("12.5"));
+        assertEquals("-0.50", Convert.balance(-50));
+
+        for (String bad : new String[] {"", "-", ".", "1.234", "1..2", "12a", ",12", "1,", "92233720368547758.08",
+                // Commas only between groups of three
+                "1,2", "12,34,5", "1234,567", "1,,234", "1,234,", "1,23.45"}) {
+            assertThrows(NumberFormatException.class, () -> Money.parse(bad), bad);
+        }
+    }
+
+    @Test
+    void testArithmeticIsExactAndChecked() {
+        long sum = 0;
+        for (int i = 0; i < 10; i++) {
+            sum = Money.add(sum, Money.cents(0.1));
+        }
+        assertEquals(100, sum);
+        assertEquals(1.0, Money.amount(sum));
+        assertEquals(29, Money.cents(0.29));
+        assertEquals(0.29, Money.amount(Money.cents(0.29)));
+
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.subtract(Long.MIN_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.multiply(Long.MAX_VALUE / 2, 3));
+        assertThrows(ArithmeticException.class, () -> Money.cents(Double.NaN));
+        assertThrows(ArithmeticException.class, () -> Money.cents(1e18));
+    }
+}
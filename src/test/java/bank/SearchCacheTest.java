@@ -0,0 +1,67 @@
+package bank;
+
+import bank.user.Users;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private SearchCache cache;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "CHECKING", 10000, new ArrayList<>()));
+        accounts.add(new Users.Account("1002", "SAVINGS", 500, new ArrayList<>()));
+        Users.add(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com", accounts));
+        cache = new SearchCache(2, 1000);
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    @Test
+    void testRepeatsAreHitsUntilTheEntityChanges() {
+        List<Users.Account> first = cache.run(Search.ACCOUNTS.where("type", "=", "CHECKING"));
+        assertSame(first, cache.run(Search.ACCOUNTS.where("type", "=", "CHECKING")));
+        // Written differently, same normalized query
+        cache.run(Search.ACCOUNTS.where("balance", ">", 50));
+        cache.run(Search.ACCOUNTS.where("balance", ">", "50.0"));
+        List<Users.User> users = cache.run(Search.USERS.where("role", "=", "CUSTOMER"));
+        assertEquals(new SearchCache.Stats(2, 3, 1, 0, 2, 2), cache.stats());
+
+        // A posting changes accounts, and the users holding them
+        Users.deposit(1, "1002", 10.0, "Employer", "Bonus");
+        List<Users.User> after = cache.run(Search.USERS.where("role", "=", "CUSTOMER"));
+        assertNotSame(users, after);
+        assertEquals(1500, after.get(0).accounts().get(1).balanceCents());
+        List<Users.Account> rich = cache.run(Search.ACCOUNTS.where("balance", ">", 50));
+        assertEquals(1, rich.size());
+        assertEquals(2, cache.stats().invalidations());
+        assertThrows(UnsupportedOperationException.class, () -> rich.add(null));
+    }
+
+    @Test
+    void testRowBoundEvictsLeastRecentlyUsed() {
+        SearchCache small = new SearchCache(10, 2);
+        small.run(Search.ACCOUNTS.all());
+        small.run(Search.USERS.all());
+        assertEquals(1, small.stats().evictions());
+        assertEquals(1, small.stats().entries());
+        assertEquals(1, small.stats().rows());
+    }
+}
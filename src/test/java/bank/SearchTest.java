@@ -0,0 +1,222 @@
+package bank;
+
+import bank.user.Users;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+
+        List<Users.Transaction> txs = new ArrayList<>();
+        txs.add(new Users.Transaction(20250105, 1025, "Coffee shop", "0", "1001", 0, "Cafe"));
+        txs.add(new Users.Transaction(20250210, 9999, "Rent", "2001", "1001", 2, "Bob"));
+        txs.add(new Users.Transaction(20250301, 10050, "Groceries", "0", "1001", 0, "Market"));
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 1075, txs));
+        accounts.add(new Users.Account("1002", "Savings", 1025, new ArrayList<>()));
+        Users.add(new Users.User(1, "alice", "Alice Smith", "CUSTOMER", "pw", "alice@email.com", accounts));
+        Users.add(new Users.User(2, "bob", "Bob Stone", "TELLER", "pw", "bob@email.com", new ArrayList<>()));
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    @Test
+    void testNumbersAreNotTruncated() {
+        // 10.75 and 10.25 both truncate to 10
+        List<Users.Account> rich = Search.ACCOUNTS.where("balance", ">", 10.5).run();
+        assertEquals(List.of("1001"), rich.stream().map(Users.Account::number).toList());
+        assertEquals(1, Search.all("accounts", "balance", "=", 10.25).size());
+        assertEquals(1, Search.all("accounts", "balance", "=", "$10.25").size());
+        assertEquals(2, Search.TRANSACTIONS.where("amount", ">=", 99.99).run().size());
+        assertEquals(1, Search.TRANSACTIONS.where("amount", ">", "100").run().size());
+    }
+
+    @Test
+    void testOperatorsAndComposition() {
+        Search.Query<Users.Transaction> february = Search.TRANSACTIONS.where("date", ">=", "2025-02-01")
+                .and(Search.TRANSACTIONS.where("date", "<", 20250301));
+        assertEquals(List.of("Rent"), february.run().stream().map(Users.Transaction::details).toList());
+
+        Search.Query<Users.Transaction> either = Search.TRANSACTIONS.where("details", "prefix", "Cof")
+                .or(Search.TRANSACTIONS.where("recipient_name", "contains", "ark"));
+        assertEquals(List.of("Coffee shop", "Groceries"), either.run().stream().map(Users.Transaction::details).toList());
+        assertEquals("(transactions.details prefix \"Cof\" OR transactions.recipient_name contains \"ark\")", either.text());
+
+        assertEquals(1, Search.USERS.where("role", "!=", "CUSTOMER").run().size());
+        assertEquals(2, Search.USERS.where("id", "<=", 2).run().size());
+    }
+
+    @Test
+    void testInvalidQueriesAreRejectedWhenCompiled() {
+        assertThrows(IllegalArgumentException.class, () -> Search.USERS.where("nope", "=", 1));
+        assertThrows(IllegalArgumentException.class, () -> Search.USERS.where("id", "contains", 1));
+        assertThrows(IllegalArgumentException.class, () -> Search.ACCOUNTS.where("balance", "~", 1));
+        assertThrows(IllegalArgumentException.class, () -> Search.TRANSACTIONS.where("amount", ">", "lots"));
+        // Money compares in whole cents
+        assertThrows(IllegalArgumentException.class, () -> Search.ACCOUNTS.where("balance", ">", 10.255));
+        assertTrue(Search.all("branches", "id", "=", 1).isEmpty());
+    }
+
+    @Test
+    void testRangeQueriesUseIndexesKeptCurrent() {
+        Search.Query<Users.Transaction> february = Search.TRANSACTIONS.where("date", ">=", 20250201)
+                .and(Search.TRANSACTIONS.where("date", "<", 20250301));
+        assertTrue(february.indexed());
+        assertEquals(List.of("Rent"), february.run().stream().map(Users.Transaction::details).toList());
+        assertFalse(Search.TRANSACTIONS.where("details", "=", "Rent")
+                .or(Search.TRANSACTIONS.where("amount", ">", 1)).indexed());
+
+        // Postings move the balance and add to the date and amount indexes
+        Users.deposit(1, "1002", 5.0, "Employer", "Bonus");
+        Search.Query<Users.Account> balance = Search.ACCOUNTS.where("balance", ">", 15.0);
+        assertTrue(balance.indexed());
+        assertEquals(List.of("1002"), balance.run().stream().map(Users.Account::number).toList());
+        assertEquals(List.of("Coffee shop", "Bonus"), Search.TRANSACTIONS.where("amount", "<", 11)
+                .and(Search.TRANSACTIONS.where("amount", ">", 0)).run().stream().map(Users.Transaction::details).toList());
+
+        Users.remove(1);
+        assertTrue(Search.ACCOUNTS.where("balance", ">=", 0).run().isEmpty());
+        assertTrue(Search.TRANSACTIONS.where("date", ">", 0).run().isEmpty());
+    }
+
+    @Test
+    void testIndexedRunsKeepStorageOrder() {
+        // Balances and amounts descending in storage order, so index order would be reversed
+        for (long id = 3; id <= 6; id++) {
+            List<Users.Transaction> txs = new ArrayList<>();
+            txs.add(new Users.Transaction(20250400 - id, 100_000 - 100 * id, "Invoice " + id, "0", String.valueOf(3000 + id), 0, "Client"));
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account(String.valueOf(3000 + id), "Checking", 100_000 - 100 * id, txs));
+            Users.add(new Users.User(id, "user" + id, "User " + id, "CUSTOMER", "pw", "u@email.com", accounts));
+        }
+        Users.deposit(1, "1002", 500.0, "Employer", "Bonus");
+
+        Search.Query<Users.Account> rich = Search.ACCOUNTS.where("balance", ">", 100);
+        assertTrue(rich.indexed());
+        assertEquals(List.of("1002", "3003", "3004", "3005", "3006"),
+                rich.run().stream().map(Users.Account::number).toList());
+
+        Search.Query<Users.Transaction> large = Search.TRANSACTIONS.where("amount", ">=", 100);
+        assertEquals(List.of("Groceries", "Bonus", "Invoice 3", "Invoice 4", "Invoice 5", "Invoice 6"),
+                large.run().stream().map(Users.Transaction::details).toList());
+        List<Users.Transaction> scanned = new ArrayList<>();
+        for (Users.Transaction t : Search.TRANSACTIONS.all().run()) {
+            if (t.amountCents() >= 10_000) {
+                scanned.add(t);
+            }
+        }
+        assertEquals(scanned, large.run(), "The same rows in the same order as a scan");
+    }
+
+    @Test
+    void testIndexRebuiltAfterLoad() {
+        Users.save();
+        Users.load();
+        List<Users.Transaction> found = Search.TRANSACTIONS.where("amount", "=", 99.99).run();
+        assertEquals(1, found.size());
+        assertEquals(20250210, found.get(0).date());
+    }
+
+    private static void addSkewedUsers() {
+        // One corporate user holds most of the history
+        for (long id = 10; id < 200; id++) {
+            int count = id == 50 ? 5000 : (int) (id % 7);
+            List<Users.Transaction> txs = new ArrayList<>();
+            for (int t = 0; t < count; t++) {
+                txs.add(new Users.Transaction(20250101 + t % 28, t % 100, "Payment " + t, "0", "A" + id, 0, "Shop"));
+            }
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account("A" + id, "Checking", id, txs));
+            Users.add(new Users.User(id, "user" + id, "User " + id, "CUSTOMER", "pw", "u@email.com", accounts));
+        }
+    }
+
+    @Test
+    void testParallelRunMatchesSequentialOrder() {
+        addSkewedUsers();
+        Search.Query<Users.Transaction> query = Search.TRANSACTIONS.where("details", "contains", "1")
+                .or(Search.TRANSACTIONS.where("recipient_name", "=", "Bob"));
+        List<Users.Transaction> expected = query.run();
+        assertTrue(expected.size() > 1000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected, query.runParallel(pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Search.USERS.all().run(), Search.USERS.all().runParallel());
+    }
+
+    @Test
+    void testSplitsByTransactionCount() {
+        addSkewedUsers();
+        UserSpliterator users = UserSpliterator.of(Users.get(), u -> u.accounts().isEmpty() ? 1
+                : 1 + u.accounts().get(0).transactions().size());
+        long total = users.weight();
+        UserSpliterator left = users.trySplit();
+        assertNotNull(left);
+        // The cut lands next to the heavy user instead of at half the users
+        assertEquals(Users.get().indexOf(Users.get(50)) + 1, left.estimateSize());
+        assertEquals(total, left.weight() + users.weight());
+    }
+
+    @Test
+    void testKeysetPagesCoverTheResult() {
+        addSkewedUsers();
+        Search.Query<Users.Transaction> query = Search.TRANSACTIONS.where("amount", "!=", 3);
+        List<Users.Transaction> expected = query.run();
+
+        List<Users.Transaction> paged = new ArrayList<>();
+        SearchCursor.Page<Users.Transaction> page = query.page((String) null, 37);
+        while (true) {
+            assertTrue(page.rows().size() <= 37);
+            paged.addAll(page.rows());
+            if (page.next() == null) {
+                break;
+            }
+            page = query.page(page.next(), 37);
+        }
+        assertEquals(expected, paged);
+
+        assertEquals(expected.subList(100, 110), query.page(100, 10).rows());
+        assertNull(Search.USERS.where("id", "=", 1).page(0, 5).next());
+    }
+
+    @Test
+    void testTokenSurvivesChangesInFront() {
+        addSkewedUsers();
+        SearchCursor<Users.Account> cursor = Search.ACCOUNTS.where("type", "=", "Checking").cursor();
+        for (int i = 0; i < 20; i++) {
+            cursor.next();
+        }
+        String token = cursor.token();
+        Users.Account after = cursor.next();
+
+        // Users in front of the position go away; the token still points behind the same account
+        Users.remove(1);
+        Users.remove(10);
+        assertEquals(after.number(), Search.ACCOUNTS.where("type", "=", "Checking").cursor(token).next().number());
+
+        assertThrows(IllegalArgumentException.class, () -> Search.USERS.all().cursor("nonsense"));
+    }
+}
@@ -0,0 +1,134 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    private static Users.User alice(String role, List<Users.Account> accounts) {
+        return new Users.User(1, "alice", "Alice", role, "pw", "alice@email.com", accounts);
+    }
+
+    @Test
+    void testUsersPublishesChanges() {
+        List<UserChange> seen = new ArrayList<>();
+        try (ChangeLog.Subscription ignored = Users.changes().subscribe(Users.changes().lastSeq(), seen::add)) {
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account("1001", "Checking", 50000, new ArrayList<>()));
+            Users.add(alice("CUSTOMER", accounts));
+
+            List<Users.Account> more = new ArrayList<>(accounts);
+            more.add(new Users.Account("1002", "Savings", 0, new ArrayList<>()));
+            Users.replace(alice("TELLER", more));
+
+            Users.deposit(1, "1002", 25.0, "Employer", "Bonus");
+            Users.remove(1);
+        }
+        Users.add(alice("CUSTOMER", new ArrayList<>()));
+
+        assertEquals(List.of(
+                UserChange.Type.USER_ADDED,
+                UserChange.Type.ACCOUNT_OPENED,
+                UserChange.Type.ROLE_CHANGED,
+                UserChange.Type.TRANSACTION_POSTED,
+                UserChange.Type.USER_REMOVED
+        ), seen.stream().map(UserChange::type).toList(), "Nothing is delivered after closing");
+
+        assertEquals("1002", seen.get(1).account());
+        assertEquals(2500, seen.get(3).tx().amountCents());
+        for (int i = 1; i < seen.size(); i++) {
+            assertEquals(seen.get(i - 1).seq() + 1, seen.get(i).seq());
+        }
+    }
+
+    @Test
+    void testPostedUserIsFrozen() {
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 50000, new ArrayList<>()));
+        Users.add(alice("CUSTOMER", accounts));
+
+        List<UserChange> seen = new ArrayList<>();
+        try (ChangeLog.Subscription ignored = Users.changes().subscribe(Users.changes().lastSeq(), seen::add)) {
+            Users.deposit(1, "1001", 25.0, "Employer", "Bonus");
+            Users.deposit(1, "1001", 10.0, "Employer", "Bonus");
+        }
+
+        Users.User first = seen.get(0).user();
+        assertEquals(52500, first.accounts().get(0).balanceCents(), "A later posting doesn't show through");
+        assertEquals(1, first.accounts().get(0).transactions().size());
+        assertEquals(53500, seen.get(1).user().accounts().get(0).balanceCents());
+        assertThrows(UnsupportedOperationException.class, () -> first.accounts().clear());
+    }
+
+    @Test
+    void testReplacedAccountsPublishTheirChanges() {
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 50000, new ArrayList<>()));
+        accounts.add(new Users.Account("1002", "Savings", 0, new ArrayList<>()));
+        Users.add(alice("CUSTOMER", accounts));
+        Users.Transaction fee = new Users.Transaction(20250101, -500, "Fee", "0", "1001", 0, "Bank");
+
+        List<UserChange> seen = new ArrayList<>();
+        try (ChangeLog.Subscription ignored = Users.changes().subscribe(Users.changes().lastSeq(), seen::add)) {
+            // Through the repository path, not a posting: history and balance of one account
+            List<Users.Account> charged = new ArrayList<>(accounts);
+            charged.set(0, new Users.Account("1001", "Checking", 49500, List.of(fee)));
+            Users.replace(alice("CUSTOMER", charged));
+
+            List<Users.Account> corrected = new ArrayList<>(charged);
+            corrected.set(1, new Users.Account("1002", "Savings", 700, new ArrayList<>()));
+            Users.replace(alice("CUSTOMER", corrected));
+
+            // Equal records, nothing to publish
+            Users.replace(alice("CUSTOMER", new ArrayList<>(corrected)));
+        }
+
+        assertEquals(List.of(UserChange.Type.TRANSACTION_POSTED, UserChange.Type.ACCOUNT_UPDATED),
+                seen.stream().map(UserChange::type).toList());
+        assertEquals("1001", seen.get(0).account());
+        assertEquals(fee, seen.get(0).tx());
+        assertEquals("1002", seen.get(1).account());
+        assertEquals(700, seen.get(1).user().accounts().get(1).balanceCents());
+    }
+
+    @Test
+    void testResumeFromSequence() {
+        ChangeLog log = new ChangeLog(3);
+        for (long id = 1; id <= 5; id++) {
+            log.userAdded(new Users.User(id, "u" + id, "U", "CUSTOMER", "pw", "e", List.of()));
+        }
+
+        List<UserChange> resumed = new ArrayList<>();
+        log.subscribe(3, resumed::add).close();
+        assertEquals(List.of(4L, 5L), resumed.stream().map(UserChange::userId).toList());
+
+        // Change 2 is no longer retained
+        List<UserChange> behind = log.since(1);
+        assertEquals(1, behind.size());
+        assertEquals(UserChange.Type.RELOADED, behind.get(0).type());
+        assertEquals(5, behind.get(0).seq());
+
+        assertTrue(log.since(5).isEmpty());
+    }
+}
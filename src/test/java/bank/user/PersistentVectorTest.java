@@ -0,0 +1,59 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentVectorTest {
+
+    @Test
+    void testAppendAcrossLevels() {
+        // Past 32 * 32 + 32 elements the tree grows a third level
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> v = PersistentVector.empty();
+        for (int i = 0; i < 40_000; i++) {
+            v = v.plus(i);
+            expected.add(i);
+        }
+        assertEquals(expected, v);
+        assertEquals(39_999, v.get(39_999));
+        assertThrows(IndexOutOfBoundsException.class, () -> PersistentVector.empty().get(0));
+    }
+
+    @Test
+    void testVersionsStayIndependent() {
+        PersistentVector<String> v1 = PersistentVector.of(List.of("a", "b", "c"));
+        for (int i = 0; i < 100; i++) {
+            v1 = v1.plus("x" + i);
+        }
+        PersistentVector<String> v2 = v1.with(1, "B").with(90, "Y");
+        PersistentVector<String> v3 = v2.without(0);
+
+        assertEquals("b", v1.get(1));
+        assertEquals("x87", v1.get(90));
+        assertEquals("B", v2.get(1));
+        assertEquals("Y", v2.get(90));
+        assertEquals(v1.size(), v2.size());
+        assertEquals(v2.size() - 1, v3.size());
+        assertEquals("B", v3.get(0));
+        assertThrows(UnsupportedOperationException.class, () -> v3.add("z"));
+    }
+
+    @Test
+    void testOfFillsBlocksAndFromShares() {
+        for (int n : new int[] {0, 1, 31, 32, 33, 1024, 1056, 1057, 33_000}) {
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                items.add(i);
+            }
+            PersistentVector<Integer> v = PersistentVector.of(items);
+            assertEquals(items, v, "size " + n);
+            assertEquals(items.size() + 1, v.plus(-1).size());
+            assertSame(v, PersistentVector.from(v));
+        }
+        assertEquals(0, PersistentVector.from(null).size());
+    }
+}
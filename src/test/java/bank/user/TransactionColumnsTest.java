@@ -0,0 +1,122 @@
+package bank.user;
+
+import bank.Aggregation;
+import bank.Search;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionColumnsTest {
+
+    @TempDir
+    Path dir;
+
+    private static final int USERS = 40;
+    private static final int ROWS_PER_USER = 500;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+        for (int id = 1; id <= USERS; id++) {
+            String number = Integer.toString(1000 + id);
+            List<Users.Transaction> txs = new ArrayList<>();
+            for (int i = 0; i < ROWS_PER_USER; i++) {
+                txs.add(new Users.Transaction(20250101 + i % 28, i % 1000 - 300, "Payment", i % 2 == 0 ? "2001" : number,
+                        number, 2, i % 3 == 0 ? "Bob" : "Carol"));
+            }
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account(number, "Checking", 50000, txs));
+            Users.add(new Users.User(id, "u" + id, "U" + id, "CUSTOMER", "pw", "u" + id + "@email.com", accounts));
+        }
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    private static long sumCents(TransactionColumns columns, int account) {
+        long sum = 0;
+        for (int c = 0; c < columns.chunkCount(); c++) {
+            TransactionColumns.Chunk chunk = columns.chunk(c);
+            long[] amounts = chunk.amounts();
+            int[] accounts = chunk.accounts();
+            for (int r = 0; r < chunk.size(); r++) {
+                if (accounts[r] == account) {
+                    sum += amounts[r];
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    void testColumnsMirrorTheLedger() {
+        TransactionColumns columns = Users.transactionColumns();
+        assertEquals(USERS * ROWS_PER_USER, columns.size());
+        assertEquals(2, columns.chunkCount(), "Cut at the user after " + TransactionColumns.CHUNK_ROWS + " rows");
+
+        long expected = 0;
+        for (Users.Transaction t : Users.get(1).accounts().get(0).transactions()) {
+            expected += t.amountCents();
+        }
+        assertEquals(expected, sumCents(columns, TransactionColumns.idOf("1001")));
+
+        TransactionColumns.Chunk first = columns.chunk(0);
+        assertEquals("Bob", TransactionColumns.string(first.recipientNames()[0]));
+        assertEquals(2, first.recipients()[0]);
+        assertSame(Users.get(1).accounts().get(0).transactions().get(0), first.row(0));
+        assertEquals(-1, TransactionColumns.idOf("no such account"));
+    }
+
+    @Test
+    void testOnlyChangedChunksAreRebuilt() {
+        TransactionColumns columns = Users.transactionColumns();
+        assertSame(columns, Users.transactionColumns(), "Nothing changed");
+
+        Users.deposit(USERS, Integer.toString(1000 + USERS), 12.34, "Employer", "Bonus");
+        TransactionColumns posted = Users.transactionColumns();
+        assertNotSame(columns, posted);
+        assertSame(columns.chunk(0), posted.chunk(0));
+        assertEquals(1, posted.rebuilt());
+        assertEquals(USERS * ROWS_PER_USER + 1, posted.size());
+        assertEquals(1234, posted.chunk(1).amounts()[posted.chunk(1).size() - 1]);
+
+        Users.remove(1);
+        TransactionColumns removed = Users.transactionColumns();
+        assertEquals((USERS - 1) * ROWS_PER_USER + 1, removed.size());
+        assertEquals(0, sumCents(removed, TransactionColumns.idOf("1001")));
+    }
+
+    @Test
+    void testScansReadTheSameRowsAsTheRecords() {
+        List<Users.Transaction> all = new ArrayList<>();
+        for (Users.User u : Users.snapshot().users()) {
+            all.addAll(u.accounts().get(0).transactions());
+        }
+        List<Users.Transaction> expected = all.stream()
+                .filter(t -> t.to_account().equals("2001") && t.amountCents() > 150 && t.details().startsWith("Pay"))
+                .toList();
+
+        Search.Query<Users.Transaction> q = Search.TRANSACTIONS.where("to_account", "=", "2001")
+                .and(Search.TRANSACTIONS.where("amount", ">", 1.5))
+                .and(Search.TRANSACTIONS.where("details", "prefix", "Pay"));
+        assertEquals(expected, q.run());
+        assertEquals(expected, q.runParallel(new ForkJoinPool(4)));
+
+        long sum = expected.stream().mapToLong(Users.Transaction::amountCents).sum();
+        assertEquals(sum, Aggregation.over(q).of("amount").total().sum());
+        assertEquals(sum, Aggregation.over(q).of("amount").parallel(new ForkJoinPool(4)).total().sum());
+        var byName = Aggregation.over(Search.TRANSACTIONS.all()).groupBy("recipient_name").of("amount").run();
+        assertEquals(List.of("Bob", "Carol"), List.copyOf(byName.keySet()));
+        assertEquals(all.stream().filter(t -> t.recipient_name().equals("Bob")).count(), byName.get("Bob").count());
+    }
+}
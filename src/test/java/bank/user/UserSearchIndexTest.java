@@ -0,0 +1,84 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSearchIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        index = UserSearchIndex.forUsers();
+        Users.reset();
+        Users.add(user(1, "Alice Martin", "CUSTOMER"));
+        Users.add(user(2, "Bob Stone", "TELLER"));
+        Users.add(user(3, "Martina Alvarez", "ADMIN"));
+    }
+
+    private static Users.User user(long id, String name, String role) {
+        return new Users.User(id, "user" + id, name, role, "pw", "user" + id + "@email.com", new ArrayList<>());
+    }
+
+    private List<Long> ids(List<Users.User> users) {
+        return users.stream().map(Users.User::id).toList();
+    }
+
+    @Test
+    void testMatchesNameOrRoleIgnoringCase() {
+        assertEquals(List.of(1L, 3L), ids(index.filter("mar")));
+        assertEquals(List.of(1L, 3L), ids(index.filter("MARTIN")));
+        assertEquals(List.of(2L), ids(index.filter("tell")));
+        assertEquals(List.of(1L, 2L, 3L), ids(index.filter("")));
+        assertTrue(index.filter("zzz").isEmpty());
+        assertTrue(index.filter("martinez").isEmpty());
+    }
+
+    @Test
+    void testFollowsChanges() {
+        Users.replace(user(2, "Bob Martins", "TELLER"));
+        Users.remove(1);
+        Users.add(user(4, "Omar", "CUSTOMER"));
+
+        assertEquals(List.of(2L, 3L, 4L), ids(index.filter("mar")));
+        assertTrue(index.filter("stone").isEmpty());
+    }
+
+    @Test
+    void testSessionNarrowsWhileTyping() {
+        UserSearchIndex.Session session = index.session();
+        assertEquals(List.of(1L, 3L), ids(session.filter("m")));
+        assertEquals(List.of(1L, 3L), ids(session.filter("ma")));
+        assertEquals(List.of(3L), ids(session.filter("martina")));
+
+        // A user added between keystrokes is not missed
+        Users.add(user(5, "Martina Lopez", "CUSTOMER"));
+        assertEquals(List.of(3L, 5L), ids(session.filter("martina")));
+        assertEquals(List.of(1L, 3L, 5L), ids(session.filter("mart")));
+    }
+
+    @Test
+    void testHoldsSnapshotUsers() {
+        Users.snapshot();
+        Users.User live = user(6, "Marta Live", "CUSTOMER");
+        Users.add(live);
+        Users.replace(user(2, "Bob Martin", "TELLER"));
+
+        assertEquals(Users.snapshot().users(), index.filter(""));
+        for (Users.User u : index.filter("mart")) {
+            assertSame(Users.snapshot().users().get(Users.snapshot().users().indexOf(u)), u,
+                    "Not the caller's record");
+        }
+        assertNotSame(live, index.filter("marta").get(0));
+    }
+}
@@ -0,0 +1,67 @@
+package bank.user;
+
+import bank.user.repository.JsonUserRepository;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsernameIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+        Users.add(user(1, "alice"));
+        Users.add(user(2, "bob"));
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    private static Users.User user(long id, String username) {
+        return new Users.User(id, username, "User " + id, "CUSTOMER", "pw" + id, username + "@email.com", new ArrayList<>());
+    }
+
+    @Test
+    void testLookupFollowsRenameAndRemove() {
+        assertEquals(2, Users.byUsername("bob").id());
+        assertNull(Users.byUsername("carol"));
+
+        Users.replace(user(2, "robert"));
+        assertNull(Users.byUsername("bob"));
+        assertEquals(2, Users.byUsername("robert").id());
+
+        Users.remove(1);
+        assertNull(Users.byUsername("alice"));
+    }
+
+    @Test
+    void testRepeatedUsernameKeepsFirstUser() {
+        Users.add(user(3, "alice"));
+        assertEquals(1, Users.byUsername("alice").id());
+
+        // The other holder of the name takes over once the first one is gone
+        Users.remove(1);
+        assertEquals(3, Users.byUsername("alice").id());
+    }
+
+    @Test
+    void testAuthenticationUsesIndexAfterLoad() {
+        Users.save();
+        Authentication auth = new Authentication(new JsonUserRepository());
+        assertTrue(auth.userExists("alice"));
+        assertFalse(auth.userExists("carol"));
+        assertEquals(1, auth.authenticateByUsername("alice", "pw1").orElseThrow().id());
+        assertTrue(auth.authenticateByUsername("alice", "pw2").isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersAccountIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 50000, new ArrayList<>()));
+        accounts.add(new Users.Account("1002", "Savings", 0, new ArrayList<>()));
+        Users.add(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com", accounts));
+        List<Users.Account> bobs = new ArrayList<>();
+        bobs.add(new Users.Account("2001", "Checking", 5000, new ArrayList<>()));
+        Users.add(new Users.User(2, "bob", "Bob", "CUSTOMER", "pw", "bob@email.com", bobs));
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    @Test
+    void testLookupAfterAddAndPostings() {
+        assertEquals(1, Users.ownerOf("1002").id());
+        assertEquals(2, Users.ownerOf("2001").id());
+        assertNull(Users.ownerOf("9999"));
+
+        Users.transaction(1, "1001", 2, "2001", 100.0, "Rent");
+        Users.deposit(1, "1002", 10.0, "Employer", "Bonus");
+        assertEquals(15000, Users.account("2001").balanceCents());
+        assertEquals(40000, Users.account("1001").balanceCents());
+        assertEquals(1000, Users.account("1002").balanceCents());
+    }
+
+    @Test
+    void testOpenAndCloseKeepIndexCurrent() {
+        Users.User alice = Users.get(1);
+        List<Users.Account> withoutChecking = new ArrayList<>(alice.accounts().subList(1, 2));
+        withoutChecking.add(new Users.Account("1003", "Card", 0, new ArrayList<>()));
+        Users.replace(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com", withoutChecking));
+
+        assertFalse(Users.accountExists("1001"));
+        assertEquals(1, Users.ownerOf("1003").id());
+
+        // Slots moved: the savings account is first now
+        Users.deposit(1, "1002", 5.0, "Employer", "Bonus");
+        assertEquals(500, Users.get(1).accounts().get(0).balanceCents());
+
+        Users.remove(2);
+        assertFalse(Users.accountExists("2001"));
+    }
+
+    @Test
+    void testIndexRebuiltAfterLoad() {
+        Users.save();
+        Users.reset();
+        assertFalse(Users.accountExists("1001"));
+        Users.load();
+        assertEquals(1, Users.ownerOf("1001").id());
+    }
+}
@@ -0,0 +1,102 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersBatchTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 10000, new ArrayList<>()));
+        Users.add(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com", accounts));
+        List<Users.Account> bobs = new ArrayList<>();
+        bobs.add(new Users.Account("2001", "Checking", 0, new ArrayList<>()));
+        Users.add(new Users.User(2, "bob", "Bob", "CUSTOMER", "pw", "bob@email.com", bobs));
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    @Test
+    void testItemsApplyInOrderWithTheirOwnResults() throws Exception {
+        List<Users.PostingResult> results = Users.transactionBatch(List.of(
+                new Users.Transfer(1, "1001", 2, "2001", 80.0, "Rent"),
+                // Only 20 left: fails on the balance the first item left
+                new Users.Withdrawal(1, "1001", 50.0, "Shop", "Groceries"),
+                new Users.Deposit(1, "1001", 40.0, "Employer", "Salary"),
+                new Users.Withdrawal(1, "1001", 50.0, "Shop", "Groceries"),
+                new Users.Deposit(2, "9999", 10.0, "Employer", "Salary"),
+                new Users.Transfer(2, "2001", 1, "1001", -5.0, "Refund")
+        ));
+
+        assertEquals(List.of(true, false, true, true, false, false),
+                results.stream().map(Users.PostingResult::posted).toList());
+        assertTrue(results.get(1).error().startsWith("insufficient balance"));
+        assertEquals("account not found (9999)", results.get(4).error());
+        assertEquals("amount must be positive", results.get(5).error());
+
+        assertEquals(1000, Users.account("1001").balanceCents());
+        assertEquals(8000, Users.account("2001").balanceCents());
+        assertEquals(3, Users.account("1001").transactions().size());
+
+        Users.flush();
+        String json = Files.readString(dir.resolve("users.json"));
+        assertTrue(json.contains("\"Salary\"") && json.contains("\"Rent\""), "The batch is on disk after flush");
+    }
+
+    @Test
+    void testBalancesStayWholeCents() {
+        List<Users.Posting> dimes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            dimes.add(new Users.Deposit(2, "2001", 0.1, "Jar", "Dime"));
+        }
+        dimes.add(new Users.Deposit(2, "2001", 0.001, "Jar", "Less than a cent"));
+        dimes.add(new Users.Deposit(2, "2001", Double.POSITIVE_INFINITY, "Jar", "Everything"));
+        List<Users.PostingResult> results = Users.transactionBatch(dimes);
+
+        // Added up as doubles the dimes would come to 0.9999999999999999
+        assertEquals(100, Users.account("2001").balanceCents());
+        assertEquals(100, Users.account("2001").balanceCents());
+        assertEquals("amount must be positive", results.get(10).error());
+        assertEquals("amount or balance out of range", results.get(11).error());
+    }
+
+    @Test
+    void testPayrollOverManyAccounts() {
+        int staff = 5_000;
+        for (int i = 0; i < staff; i++) {
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account("E" + i, "Checking", 0, new ArrayList<>()));
+            Users.add(new Users.User(100 + i, "e" + i, "Employee " + i, "CUSTOMER", "pw", "e@email.com", accounts));
+        }
+        Users.deposit(1, "1001", staff * 10.0, "Owner", "Funding");
+
+        List<Users.Posting> payroll = new ArrayList<>();
+        for (int i = 0; i < staff; i++) {
+            payroll.add(new Users.Transfer(1, "1001", 100 + i, "E" + i, 10.0, "Salary"));
+        }
+        List<Users.PostingResult> results = Users.transactionBatch(payroll);
+
+        assertTrue(results.stream().allMatch(Users.PostingResult::posted));
+        assertEquals(10000, Users.account("1001").balanceCents());
+        assertEquals(1000, Users.account("E" + (staff - 1)).balanceCents());
+        assertEquals(1 + staff, Users.account("1001").transactions().size());
+    }
+}
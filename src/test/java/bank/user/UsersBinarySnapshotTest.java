@@ -0,0 +1,148 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersBinarySnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private List<Users.User> expected;
+
+    @BeforeEach
+    void setup() throws Exception {
+        var resource = getClass().getClassLoader().getResource("bank/users.json");
+        assertNotNull(resource, "users.json resource not found");
+        Path json = dir.resolve("users.json");
+        Files.copy(Path.of(resource.toURI()), json, StandardCopyOption.REPLACE_EXISTING);
+
+        Users.setJsonFile(json);
+        Users.reset();
+        Users.load();
+        expected = new ArrayList<>(Users.get());
+
+        Users.setSnapshotFormat(Users.SnapshotFormat.BINARY);
+    }
+
+    @AfterEach
+    void teardown() {
+        Users.setSnapshotFormat(Users.SnapshotFormat.JSON);
+    }
+
+    @Test
+    void testFirstLoadImportsJson() {
+        Users.reset();
+        Users.load();
+
+        assertTrue(Files.exists(dir.resolve("users.bin")), "Binary snapshot should be written on import");
+        assertEquals(expected, Users.get());
+    }
+
+    @Test
+    void testLazyLookupById() {
+        Users.load();
+        Users.reset();
+        Users.load();
+
+        Users.User kubrick = Users.get(2);
+        assertEquals(expected.get(1), kubrick);
+        assertSame(kubrick, Users.get().get(1), "The list and the index should share the decoded user");
+    }
+
+    @Test
+    void testPostingsSurviveReload() {
+        Users.load();
+        Users.setJournaled(true);
+        try {
+            Users.deposit(1, "1001", 100.0, "Label", "Advance");
+        } finally {
+            Users.setJournaled(false);
+        }
+
+        Users.reset();
+        Users.load();
+        assertEquals(250010000, Users.get(1).accounts().get(0).balanceCents());
+    }
+
+    @Test
+    void testDamagedBlockRecoversIntactUsersAndDeltas() throws Exception {
+        // Enough history for two 1 MB blocks
+        Users.reset();
+        for (long id = 1; id <= 200; id++) {
+            List<Users.Transaction> txs = new ArrayList<>();
+            for (int t = 0; t < 200; t++) {
+                txs.add(new Users.Transaction(20250101 + t, 100L * t, "Payment " + t, "0", "A" + id, 0, "Shop"));
+            }
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account("A" + id, "Checking", 10000, txs));
+            Users.add(new Users.User(id, "user" + id, "User " + id, "CUSTOMER", "pw", "u@email.com", accounts));
+        }
+        Users.save();
+        Users.setJournaled(true);
+        try {
+            Users.deposit(1, "A1", 50.0, "Employer", "Bonus");
+        } finally {
+            Users.setJournaled(false);
+        }
+
+        Path bin = dir.resolve("users.bin");
+        UsersSnapshotHeader.Header header = UsersSnapshotHeader.read(bin);
+        assertEquals(2, header.blocks().size());
+        try (FileChannel ch = FileChannel.open(bin, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{'#'}), header.blocks().get(0).end() + 10);
+        }
+
+        Users.reset();
+        Users.load();
+        int recovered = Users.get().size();
+        assertTrue(recovered > 50 && recovered < 200, "Users in front of the damage survive, got " + recovered);
+        assertEquals(15000, Users.get(1).accounts().get(0).balanceCents(), "The delta is replayed on top");
+        assertNotEquals(expected.get(0), Users.get(1), "Not the users of the stale JSON file");
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().startsWith("users.bin.damaged-")).count());
+        }
+
+        // The recovered state replaced the damaged file
+        Users.reset();
+        Users.load();
+        assertEquals(recovered, Users.get().size());
+        assertEquals(15000, Users.get(1).accounts().get(0).balanceCents());
+    }
+
+    @Test
+    void testUnreadableSnapshotFailsInsteadOfLoadingJson() throws Exception {
+        Users.load();
+        Files.write(dir.resolve("users.bin"), new byte[]{1, 2, 3});
+        UsersSnapshotHeader.delete(dir.resolve("users.bin"));
+
+        Users.reset();
+        assertThrows(IllegalStateException.class, Users::load);
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(dir.resolve("users.bin")), "The snapshot is left alone");
+    }
+
+    @Test
+    void testExportJson() throws Exception {
+        Users.load();
+        Path export = dir.resolve("export.json");
+        Users.exportJson(export);
+
+        Users.setSnapshotFormat(Users.SnapshotFormat.JSON);
+        Users.setJsonFile(export);
+        Users.reset();
+        Users.load();
+        assertEquals(expected, Users.get());
+    }
+}
@@ -0,0 +1,212 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersConcurrencyTest {
+
+    private static final int USERS = 8;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+        for (int i = 1; i <= USERS; i++) {
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account(String.valueOf(1000 + i), "Checking", 100000, new ArrayList<>()));
+            Users.add(new Users.User(i, "user" + i, "User " + i, "CUSTOMER", "pw", "user" + i + "@email.com", accounts));
+        }
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+        Users.setJournaled(false);
+        Users.setCheckpointInterval(1000);
+        Users.setCompactionThreshold(4);
+    }
+
+    @Test
+    void testOpposingTransfersKeepTotalsAndFinish() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                runs.add(pool.submit(() -> {
+                    for (int n = 0; n < 200; n++) {
+                        int from = 1 + (seed + n) % USERS;
+                        int to = 1 + (seed * 3 + n * 5 + 1) % USERS;
+                        if (from != to) {
+                            Users.transaction(from, String.valueOf(1000 + from), to, String.valueOf(1000 + to), 1.0, "Ping");
+                        }
+                    }
+                }));
+            }
+            // Structural changes interleave with the postings
+            runs.add(pool.submit(() -> {
+                for (int n = 0; n < 20; n++) {
+                    long id = 100 + n;
+                    List<Users.Account> accounts = new ArrayList<>();
+                    accounts.add(new Users.Account(String.valueOf(5000 + n), "Savings", 0, new ArrayList<>()));
+                    Users.add(new Users.User(id, "extra" + n, "Extra", "CUSTOMER", "pw", "x@email.com", accounts));
+                }
+            }));
+            for (Future<?> run : runs) {
+                run.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long total = 0;
+        int postings = 0;
+        for (int i = 1; i <= USERS; i++) {
+            Users.Account a = Users.account(String.valueOf(1000 + i));
+            total += a.balanceCents();
+            postings += a.transactions().size();
+            long history = 100_000;
+            for (Users.Transaction t : a.transactions()) {
+                history += t.amountCents();
+            }
+            assertEquals(history, a.balanceCents(), "balance of " + a.number() + " matches its history");
+        }
+        assertEquals(USERS * 100_000L, total);
+        assertEquals(0, postings % 2, "every transfer posts on both sides");
+        assertEquals(USERS + 20, Users.get().size());
+    }
+
+    @Test
+    void testPostingEventsFollowPublicationOrder() throws Exception {
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("9001", "Checking", 0, new ArrayList<>()));
+        accounts.add(new Users.Account("9002", "Savings", 0, new ArrayList<>()));
+        Users.add(new Users.User(99, "twin", "Twin", "CUSTOMER", "pw", "twin@email.com", accounts));
+
+        // Two accounts of one user, on different stripes: every event must show no fewer postings than the one before
+        List<Integer> seen = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try (ChangeLog.Subscription ignored = Users.changes().subscribe(Users.changes().lastSeq(), c -> {
+            if (c.type() == UserChange.Type.TRANSACTION_POSTED && c.userId() == 99) {
+                seen.add(c.user().accounts().get(0).transactions().size() + c.user().accounts().get(1).transactions().size());
+            }
+        })) {
+            List<Future<?>> runs = new ArrayList<>();
+            for (String number : List.of("9001", "9002")) {
+                runs.add(pool.submit(() -> {
+                    for (int n = 0; n < 500; n++) {
+                        Users.deposit(99, number, 1.0, "Employer", "Tick");
+                    }
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1000, seen.size());
+        for (int i = 0; i < seen.size(); i++) {
+            assertEquals(i + 1, seen.get(i), "event " + i);
+        }
+    }
+
+    @Test
+    void testJournaledPostingsSurviveConcurrentCompactions() throws Exception {
+        Users.setJournaled(true);
+        // A new base every few postings, besides the ones asked for below
+        Users.setCheckpointInterval(3);
+        Users.setCompactionThreshold(2);
+        Users.save();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < 6; t++) {
+                int seed = t;
+                runs.add(pool.submit(() -> {
+                    for (int n = 0; n < 100; n++) {
+                        int from = 1 + (seed + n) % USERS;
+                        int to = 1 + (seed * 3 + n * 5 + 1) % USERS;
+                        if (from != to) {
+                            Users.transaction(from, String.valueOf(1000 + from), to, String.valueOf(1000 + to), 1.0, "Ping");
+                        } else {
+                            Users.deposit(from, String.valueOf(1000 + from), 1.0, "Employer", "Pay");
+                        }
+                    }
+                }));
+            }
+            runs.add(pool.submit(() -> {
+                for (int n = 0; n < 50; n++) {
+                    Users.saveAsync();
+                }
+            }));
+            for (Future<?> run : runs) {
+                run.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long[] balances = new long[USERS + 1];
+        int[] histories = new int[USERS + 1];
+        for (int i = 1; i <= USERS; i++) {
+            Users.Account a = Users.account(String.valueOf(1000 + i));
+            balances[i] = a.balanceCents();
+            histories[i] = a.transactions().size();
+        }
+
+        // Base plus deltas must hold every posting exactly once
+        Users.load();
+        for (int i = 1; i <= USERS; i++) {
+            Users.Account a = Users.account(String.valueOf(1000 + i));
+            assertEquals(histories[i], a.transactions().size(), "history of " + a.number());
+            assertEquals(balances[i], a.balanceCents(), "balance of " + a.number());
+        }
+    }
+
+    @Test
+    void testTransferLocksStripesInOneOrder() throws Exception {
+        AccountLocks locks = new AccountLocks(4);
+        String a = "1001";
+        String b = "1002";
+        assertNotEquals(locks.stripe(a), locks.stripe(b));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> forward = pool.submit(() -> {
+                for (int n = 0; n < 10_000; n++) {
+                    try (AccountLocks.Held ignored = locks.lock(a, b)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            Future<?> backward = pool.submit(() -> {
+                for (int n = 0; n < 10_000; n++) {
+                    try (AccountLocks.Held ignored = locks.lock(b, a)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            forward.get(30, TimeUnit.SECONDS);
+            backward.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
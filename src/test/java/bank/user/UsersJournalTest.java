@@ -0,0 +1,188 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private Path snapshot;
+
+    @BeforeEach
+    void setup() {
+        snapshot = dir.resolve("users.json");
+        Users.setJsonFile(snapshot);
+        Users.setJournaled(true);
+        Users.reset();
+
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 50000, new ArrayList<>()));
+        accounts.add(new Users.Account("1002", "Savings", 0, new ArrayList<>()));
+        Users.add(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com", accounts));
+        Users.save();
+    }
+
+    @AfterEach
+    void teardown() {
+        Users.setJournaled(false);
+        Users.setCheckpointInterval(1000);
+        Users.setCompactionThreshold(4);
+    }
+
+    private List<Path> deltas() throws Exception {
+        try (var files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("users.json.delta-")).sorted().toList();
+        }
+    }
+
+    @Test
+    void testPostingAppendsWithoutRewritingSnapshot() throws Exception {
+        byte[] before = Files.readAllBytes(snapshot);
+
+        Users.deposit(1, "1001", 100.0, "Employer", "Salary");
+        Users.transaction(1, "1001", 1, "1002", 250.0, "Move to savings");
+        Users.flush();
+
+        assertArrayEquals(before, Files.readAllBytes(snapshot), "Snapshot should not be rewritten");
+        List<Path> deltas = deltas();
+        assertEquals(1, deltas.size());
+        assertEquals(3, Files.readAllLines(deltas.get(0)).size(), "Three entries in the active delta");
+    }
+
+    @Test
+    void testLoadReplaysJournal() {
+        Users.deposit(1, "1001", 100.0, "Employer", "Salary");
+        Users.withdraw(1, "1001", 50.0, "Grocer", "Food");
+        Users.transaction(1, "1001", 1, "1002", 250.0, "Move to savings");
+
+        Users.reset();
+        Users.load();
+
+        Users.User alice = Users.get(1);
+        assertEquals(30000, alice.accounts().get(0).balanceCents());
+        assertEquals(3, alice.accounts().get(0).transactions().size());
+        assertEquals(25000, alice.accounts().get(1).balanceCents());
+        assertEquals(1, alice.accounts().get(1).transactions().size());
+    }
+
+    @Test
+    void testUserChangesAreJournaledWithTheirPostings() throws Exception {
+        byte[] before = Files.readAllBytes(snapshot);
+
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("2001", "Checking", 0, new ArrayList<>()));
+        Users.add(new Users.User(2, "bob", "Bob", "CUSTOMER", "pw", "bob@email.com", accounts));
+        Users.deposit(2, "2001", 40.0, "Employer", "Salary");
+        Users.add(new Users.User(3, "carol", "Carol", "CUSTOMER", "pw", "carol@email.com", new ArrayList<>()));
+        Users.remove(3);
+        Users.User alice = Users.get(1);
+        Users.replace(new Users.User(1, "alice", "Alice Smith", alice.role(), alice.password(), alice.email(),
+                new ArrayList<>(alice.accounts())));
+        Users.flush();
+        assertArrayEquals(before, Files.readAllBytes(snapshot), "Only the journal was written");
+
+        // Crash: nothing but the journal holds the changes
+        Users.reset();
+        Users.load();
+        assertEquals(4000, Users.get(2).accounts().get(0).balanceCents());
+        assertEquals(1, Users.get(2).accounts().get(0).transactions().size());
+        assertNull(Users.get(3));
+        assertEquals("Alice Smith", Users.get(1).name());
+        assertEquals(50000, Users.get(1).accounts().get(0).balanceCents());
+    }
+
+    @Test
+    void testCheckpointSealsDelta() throws Exception {
+        Users.setCheckpointInterval(2);
+        byte[] before = Files.readAllBytes(snapshot);
+
+        for (int i = 0; i < 5; i++) {
+            Users.deposit(1, "1001", 10.0, "Employer", "Bonus");
+        }
+        Users.flush();
+
+        assertArrayEquals(before, Files.readAllBytes(snapshot), "Below the threshold only deltas are written");
+        List<Path> deltas = deltas();
+        assertEquals(3, deltas.size(), "Two sealed deltas and the active one");
+        assertEquals(1, Files.readAllLines(deltas.get(2)).size());
+
+        Users.reset();
+        Users.load();
+        assertEquals(55000, Users.get(1).accounts().get(0).balanceCents());
+        assertEquals(5, Users.get(1).accounts().get(0).transactions().size());
+    }
+
+    @Test
+    void testCompactionFoldsDeltasIntoBase() throws Exception {
+        Users.setCheckpointInterval(2);
+        Users.setCompactionThreshold(2);
+
+        for (int i = 0; i < 5; i++) {
+            Users.deposit(1, "1001", 10.0, "Employer", "Bonus");
+        }
+        Users.flush();
+
+        // Four entries went into the base, the fifth is in the delta started by the compaction
+        List<Path> deltas = deltas();
+        assertEquals(1, deltas.size(), "Folded deltas are deleted");
+        assertEquals(1, Files.readAllLines(deltas.get(0)).size());
+
+        Users.reset();
+        Users.load();
+        assertEquals(55000, Users.get(1).accounts().get(0).balanceCents());
+        assertEquals(5, Users.get(1).accounts().get(0).transactions().size());
+    }
+
+    @Test
+    void testFoldedDeltasLeftByCrashAreNotReplayed() throws Exception {
+        Users.setCheckpointInterval(2);
+        Users.deposit(1, "1001", 10.0, "Employer", "Bonus");
+        Users.deposit(1, "1001", 10.0, "Employer", "Bonus");
+        Users.flush();
+        Path sealed = deltas().get(0);
+        byte[] folded = Files.readAllBytes(sealed);
+
+        // Crash after the new base was written, before its deltas were deleted
+        Users.save();
+        assertTrue(deltas().isEmpty());
+        Files.write(sealed, folded);
+
+        Users.reset();
+        Users.load();
+        assertEquals(52000, Users.get(1).accounts().get(0).balanceCents());
+        assertEquals(2, Users.get(1).accounts().get(0).transactions().size());
+        assertTrue(deltas().isEmpty(), "The leftover delta is deleted");
+
+        Users.deposit(1, "1001", 1.0, "Employer", "Cent");
+        Users.reset();
+        Users.load();
+        assertEquals(52100, Users.get(1).accounts().get(0).balanceCents());
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws Exception {
+        Users.deposit(1, "1001", 100.0, "Employer", "Salary");
+        Users.flush();
+        Files.writeString(deltas().get(0), "{\"op\":\"post\",\"us",
+                java.nio.file.StandardOpenOption.APPEND);
+
+        Users.reset();
+        Users.load();
+        assertEquals(60000, Users.get(1).accounts().get(0).balanceCents());
+
+        // Appending after recovery must still produce a readable journal
+        Users.deposit(1, "1001", 1.0, "Employer", "Cent");
+        Users.reset();
+        Users.load();
+        assertEquals(60100, Users.get(1).accounts().get(0).balanceCents());
+    }
+}
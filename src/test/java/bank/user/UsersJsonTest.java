@@ -93,11 +93,11 @@ class UsersJsonTest {
 
         var kanyeAccount = kanye.accounts().get(0);
         assertEquals("Checking", kanyeAccount.type());
-        assertEquals(2500000.0, kanyeAccount.balance());
+        assertEquals(250000000, kanyeAccount.balanceCents());
         assertEquals(4, kanyeAccount.transactions().size());
 
         var firstTransaction = kanyeAccount.transactions().get(0);
-        assertEquals(-150000.0, firstTransaction.amount());
+        assertEquals(-15000000, firstTransaction.amountCents());
         assertEquals("Studio equipment", firstTransaction.details());
 
         // Check Kubrick
@@ -118,7 +118,49 @@ class UsersJsonTest {
 
         var beethovenAccount = beethoven.accounts().get(0);
         assertEquals("Checking", beethovenAccount.type());
-        assertEquals(1500000.0, beethovenAccount.balance());
+        assertEquals(150000000, beethovenAccount.balanceCents());
         assertEquals(4, beethovenAccount.transactions().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCompactRoundTrip() throws Exception {
+        Users.load();
+        List<Users.User> before = List.copyOf(Users.get());
+
+        Users.setPrettyPrinting(false);
+        try {
+            Users.save();
+        } finally {
+            Users.setPrettyPrinting(true);
+        }
+        assertEquals(1, Files.readAllLines(TEST_JSON).size(), "Compact output should be a single line");
+
+        Users.reset();
+        Users.load();
+        assertEquals(before, Users.get());
+        assertEquals(before.get(0), Users.get(before.get(0).id()));
+    }
+
+    @Test
+    void testAmountsAreExactDecimals() throws Exception {
+        // Files from before balances were held in cents may carry doubles
+        Files.writeString(TEST_JSON, "[{\"id\": 1, \"username\": \"alice\", \"name\": \"Alice\", \"role\": \"CUSTOMER\","
+                + " \"accounts\": [{\"number\": \"1001\", \"type\": \"Checking\", \"balance\": 2.5E7,"
+                + " \"transactions\": [{\"date\": 20250101, \"amount\": -0.1}]}]}]");
+        Users.load();
+        Users.Account account = Users.get(1).accounts().get(0);
+        assertEquals(2_500_000_000L, account.balanceCents());
+        assertEquals(-10, account.transactions().get(0).amountCents());
+
+        // No double tells this balance from its neighbours
+        long cents = (1L << 53) + 1;
+        Users.replace(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com",
+                List.of(new Users.Account("1001", "Checking", cents, List.of()))));
+        Users.save();
+        assertTrue(Files.readString(TEST_JSON).contains("90071992547409.93"));
+
+        Users.reset();
+        Users.load();
+        assertEquals(cents, Users.get(1).accounts().get(0).balanceCents());
+    }
+}
@@ -63,4 +63,38 @@ class UsersPersistenceTest {
         assertEquals("Dave", addedUser.name());
         assertEquals("daveUser", addedUser.username());
     }
+
+    @Test
+    void testSaveAsyncGroupCommit() throws Exception {
+        Users.setGroupCommitWindow(50);
+        try {
+            Users.add(new Users.User(8, "daveUser", "Dave", "CUSTOMER", "pass789", "dave@email.com", List.of()));
+            var first = Users.saveAsync();
+            Users.add(new Users.User(9, "erinUser", "Erin", "CUSTOMER", "pass000", "erin@email.com", List.of()));
+            var second = Users.saveAsync();
+
+            assertSame(first, second, "Requests within one window should share a write");
+            second.get(5, java.util.concurrent.TimeUnit.SECONDS);
+        } finally {
+            Users.setGroupCommitWindow(5);
+        }
+
+        assertFalse(Files.exists(Path.of("data/users.json.tmp")), "Temp file should be renamed into place");
+
+        Users.reset();
+        Users.load();
+        assertEquals(9, Users.get().size(), "Both users should be in the single write");
+    }
+
+    @Test
+    void testFlushBarrier() throws Exception {
+        Users.deposit(1, "1001", 100.0, "Label", "Advance");
+        assertEquals(250010000, Users.get(1).accounts().get(0).balanceCents(), "Memory is updated immediately");
+
+        Users.flush();
+        assertFalse(Users.isDirty(), "Nothing should be pending after the barrier");
+
+        String json = Files.readString(DATA_JSON);
+        assertTrue(json.contains("\"Advance\""), "The deposit should be on disk after flush");
+    }
 }
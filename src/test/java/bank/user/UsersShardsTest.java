@@ -0,0 +1,107 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersShardsTest {
+
+    @TempDir
+    Path dir;
+
+    private List<Users.User> expected;
+
+    @BeforeEach
+    void setup() throws Exception {
+        var resource = getClass().getClassLoader().getResource("bank/users.json");
+        assertNotNull(resource, "users.json resource not found");
+        Files.copy(Path.of(resource.toURI()), dir.resolve("users.json"), StandardCopyOption.REPLACE_EXISTING);
+
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+        Users.load();
+        expected = new ArrayList<>(Users.get());
+
+        Users.setShardCount(4);
+        Users.setSnapshotFormat(Users.SnapshotFormat.SHARDED);
+        Users.load();
+    }
+
+    @AfterEach
+    void teardown() {
+        Users.setSnapshotFormat(Users.SnapshotFormat.JSON);
+        Users.setShardCount(64);
+    }
+
+    @Test
+    void testShardsRoundTrip() throws Exception {
+        Path shardDir = dir.resolve("users");
+        assertTrue(Files.exists(shardDir.resolve("manifest.json")));
+        try (Stream<Path> files = Files.list(shardDir)) {
+            assertEquals(5, files.count(), "Four shards plus the manifest");
+        }
+
+        Users.reset();
+        Users.load();
+        assertEquals(expected, Users.get());
+    }
+
+    @Test
+    void testOnlyDirtyShardIsRewritten() throws Exception {
+        Path shardDir = dir.resolve("users");
+        FileTime old = FileTime.fromMillis(0);
+        List<Path> shards;
+        try (Stream<Path> files = Files.list(shardDir)) {
+            shards = files.filter(p -> p.getFileName().toString().startsWith("shard-")).toList();
+        }
+        for (Path p : shards) {
+            Files.setLastModifiedTime(p, old);
+        }
+
+        Users.deposit(1, "1001", 100.0, "Label", "Advance");
+        Users.flush();
+
+        long rewritten = shards.stream().filter(p -> {
+            try {
+                return !Files.getLastModifiedTime(p).equals(old);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }).count();
+        assertEquals(1, rewritten, "Only the shard holding user 1 should be written");
+
+        Users.reset();
+        Users.load();
+        assertEquals(250010000, Users.get(1).accounts().get(0).balanceCents());
+    }
+
+    @Test
+    void testDamagedShardKeepsTheOthers() throws Exception {
+        Path shardDir = dir.resolve("users");
+        Path shard = shardDir.resolve(String.format("shard-%03d.json", Math.floorMod(Long.hashCode(1L), 4)));
+        Files.writeString(shard, "[{\"id\": 1, \"user");
+
+        Users.reset();
+        Users.load();
+        assertNull(Users.get(1), "Not restored from the stale JSON file");
+        assertTrue(Users.get().size() > 0 && Users.get().size() < expected.size());
+        try (Stream<Path> files = Files.list(shardDir)) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().contains(".damaged-")).count());
+        }
+
+        // Every shard was rewritten from the recovered state
+        int recovered = Users.get().size();
+        Users.reset();
+        Users.load();
+        assertEquals(recovered, Users.get().size());
+    }
+}
@@ -0,0 +1,123 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersSnapshotHeaderTest {
+
+    @TempDir
+    Path dir;
+
+    private Path snapshot;
+
+    @BeforeEach
+    void setup() {
+        snapshot = dir.resolve("users.json");
+        Users.setJsonFile(snapshot);
+        Users.reset();
+
+        // Enough users for several 64 KB blocks
+        for (long id = 1; id <= 600; id++) {
+            List<Users.Transaction> txs = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                txs.add(new Users.Transaction(20250101 + t, 1000 * t, "Payment " + t, "0", "A" + id, 0, "Shop"));
+            }
+            List<Users.Account> accounts = new ArrayList<>();
+            accounts.add(new Users.Account("A" + id, "Checking", 10000, txs));
+            Users.add(new Users.User(id, "user" + id, "User " + id, "CUSTOMER", "pw", "user" + id + "@email.com", accounts));
+        }
+        Users.save();
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    private long damagedCopies() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("users.json.damaged-")).count();
+        }
+    }
+
+    @Test
+    void testHeaderMatchesSnapshot() throws Exception {
+        UsersSnapshotHeader.Header header = UsersSnapshotHeader.read(snapshot);
+        assertNotNull(header);
+        assertEquals(600, header.users());
+        assertEquals(Files.size(snapshot), header.bytes());
+        assertTrue(header.blocks().size() > 2, "Expected several blocks");
+        assertEquals(600, header.blocks().stream().mapToInt(UsersSnapshotHeader.Block::users).sum());
+        assertEquals(header.blocks().size(), UsersSnapshotHeader.validate(snapshot, header));
+    }
+
+    @Test
+    void testDamagedBlockRecoversIntactPrefix() throws Exception {
+        UsersSnapshotHeader.Header header = UsersSnapshotHeader.read(snapshot);
+        long inThirdBlock = header.blocks().get(1).end() + 10;
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            ch.write(java.nio.ByteBuffer.wrap(new byte[]{'#'}), inThirdBlock);
+        }
+        assertEquals(2, UsersSnapshotHeader.validate(snapshot, header));
+
+        Users.reset();
+        Users.load();
+
+        int expected = header.blocks().get(0).users() + header.blocks().get(1).users();
+        assertEquals(expected, Users.get().size(), "Users of the intact blocks survive");
+        assertEquals(1, Users.get(1).id());
+        assertEquals(1, damagedCopies(), "The damaged file is kept");
+
+        // The recovered state was written back with a fresh header
+        Users.reset();
+        Users.load();
+        assertEquals(expected, Users.get().size());
+        assertNotNull(UsersSnapshotHeader.read(snapshot));
+    }
+
+    @Test
+    void testHeaderOfAnEarlierWriteIsIgnored() throws Exception {
+        byte[] earlier = Files.readAllBytes(UsersSnapshotHeader.file(snapshot));
+        FileTime modified = Files.getLastModifiedTime(snapshot);
+        Users.deposit(1, "A1", 5.0, "Employer", "Bonus");
+        Users.flush();
+
+        // As if the snapshot was replaced but its header wasn't, within one timestamp tick
+        Files.write(UsersSnapshotHeader.file(snapshot), earlier);
+        Files.setLastModifiedTime(snapshot, modified);
+        assertNull(UsersSnapshotHeader.read(snapshot));
+
+        Users.reset();
+        Users.load();
+        assertEquals(600, Users.get().size(), "A good file isn't failed by a stale header");
+        assertEquals(10500, Users.get(1).accounts().get(0).balanceCents());
+        assertEquals(0, damagedCopies());
+    }
+
+    @Test
+    void testTruncatedFileWithoutHeaderIsNotReplacedByResource() throws Exception {
+        UsersSnapshotHeader.delete(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, java.util.Arrays.copyOf(bytes, bytes.length / 2));
+
+        Users.reset();
+        Users.load();
+
+        int recovered = Users.get().size();
+        assertTrue(recovered > 200 && recovered < 600, "Users before the cut survive, got " + recovered);
+        assertEquals("user1", Users.get(1).username(), "Not the bundled resource users");
+        assertEquals(1, damagedCopies());
+    }
+}
@@ -0,0 +1,115 @@
+package bank.user;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsersSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() {
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("1001", "Checking", 50000, new ArrayList<>()));
+        Users.add(new Users.User(1, "alice", "Alice", "CUSTOMER", "pw", "alice@email.com", accounts));
+        List<Users.Account> bobs = new ArrayList<>();
+        bobs.add(new Users.Account("2001", "Checking", 5000, new ArrayList<>()));
+        Users.add(new Users.User(2, "bob", "Bob", "CUSTOMER", "pw", "bob@email.com", bobs));
+    }
+
+    @AfterEach
+    void teardown() {
+        // A posting's background save must land before the temp dir is deleted
+        Users.flush();
+    }
+
+    @Test
+    void testSnapshotDoesNotSeeLaterChanges() {
+        Users.Snapshot before = Users.snapshot();
+        assertSame(before, Users.snapshot());
+
+        Users.transaction(1, "1001", 2, "2001", 100.0, "Rent");
+        Users.add(new Users.User(3, "carol", "Carol", "CUSTOMER", "pw", "carol@email.com", new ArrayList<>()));
+        Users.remove(2);
+
+        assertEquals(2, before.size());
+        assertEquals(50000, before.users().get(0).accounts().get(0).balanceCents());
+        assertEquals(5000, before.users().get(1).accounts().get(0).balanceCents());
+
+        Users.Snapshot after = Users.snapshot();
+        assertTrue(after.version() > before.version());
+        assertEquals(List.of(1L, 3L), after.users().stream().map(Users.User::id).toList());
+        assertEquals(40000, after.users().get(0).accounts().get(0).balanceCents());
+        assertThrows(UnsupportedOperationException.class,
+                () -> after.users().get(0).accounts().add(new Users.Account("9", "Card", 0, List.of())));
+    }
+
+    @Test
+    void testTransferPublishesBothSidesAndSurvivesReload() {
+        Users.snapshot();
+        Users.transaction(1, "1001", 2, "2001", 25.0, "Lunch");
+        Users.Snapshot s = Users.snapshot();
+        assertEquals(47500, s.users().get(0).accounts().get(0).balanceCents());
+        assertEquals(7500, s.users().get(1).accounts().get(0).balanceCents());
+
+        Users.save();
+        Users.flush();
+        Users.load();
+        Users.Snapshot loaded = Users.snapshot();
+        assertTrue(loaded.version() > s.version());
+        assertEquals(7500, loaded.users().get(1).accounts().get(0).balanceCents());
+
+        // After a load the slots are rebuilt before the posting is published
+        Users.deposit(2, "2001", 5.0, "Employer", "Bonus");
+        assertEquals(8000, Users.snapshot().users().get(1).accounts().get(0).balanceCents());
+        assertEquals(7500, loaded.users().get(1).accounts().get(0).balanceCents());
+    }
+
+    @Test
+    void testPostingsNeverChangeAHandedOutAccountList() {
+        Users.User alice = Users.get(1);
+        List<Users.Account> accounts = alice.accounts();
+
+        Users.deposit(1, "1001", 10.0, "Employer", "Bonus");
+        assertEquals(50000, accounts.get(0).balanceCents());
+        assertNotSame(alice, Users.get(1));
+        assertEquals(51000, Users.get(1).accounts().get(0).balanceCents());
+        assertSame(Users.get(1), Users.get().get(0), "The list and the id index hold the same record");
+    }
+
+    @Test
+    void testOldAccountsKeepTheirHistory() {
+        List<Users.Transaction> history = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            history.add(new Users.Transaction(20240101, 100, "Fee", "1001", "0", 0, "Bank"));
+        }
+        List<Users.Account> accounts = new ArrayList<>();
+        accounts.add(new Users.Account("3001", "Checking", 2_000_000, history));
+        Users.add(new Users.User(3, "corp", "Corp", "CUSTOMER", "pw", "corp@email.com", accounts));
+
+        Users.deposit(3, "3001", 1.0, "Client", "Invoice 1");
+        Users.Account first = Users.account("3001");
+        for (int i = 2; i <= 200; i++) {
+            Users.deposit(3, "3001", 1.0, "Client", "Invoice " + i);
+        }
+        Users.Account last = Users.account("3001");
+
+        assertEquals(20_001, first.transactions().size());
+        assertEquals("Invoice 1", first.transactions().get(20_000).details());
+        assertEquals(20_200, last.transactions().size());
+        assertEquals("Invoice 200", last.transactions().get(20_199).details());
+        // The new history shares the old rows instead of copying them
+        assertSame(first.transactions().get(5), last.transactions().get(5));
+        assertEquals(2_020_000, last.balanceCents());
+    }
+}
@@ -0,0 +1,96 @@
+package bank.user.repository;
+
+import bank.user.Users;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmUserRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() throws Exception {
+        var resource = getClass().getClassLoader().getResource("bank/users.json");
+        assertNotNull(resource, "users.json resource not found");
+        Files.copy(Path.of(resource.toURI()), dir.resolve("users.json"), StandardCopyOption.REPLACE_EXISTING);
+        Users.setJsonFile(dir.resolve("users.json"));
+        Users.reset();
+    }
+
+    private static Users.User user(long id, String username) {
+        return new Users.User(id, username, "Test " + id, "customer", "pw", username + "@bank.test", List.of(
+                new Users.Account("ACC" + id, "checking", 10000, List.of())));
+    }
+
+    @Test
+    void testImportsJsonUsers() throws Exception {
+        try (LsmStore store = LsmStore.open(dir.resolve("users.lsm"))) {
+            LsmUserRepository repo = new LsmUserRepository(store);
+            Users.load();
+            List<Users.User> expected = new ArrayList<>(Users.get());
+            assertEquals(expected.size(), repo.getAll().size());
+            for (Users.User u : expected) {
+                assertEquals(u, repo.getById(u.id()));
+            }
+        }
+    }
+
+    @Test
+    void testAddUpdateAndReopen() throws Exception {
+        Path lsm = dir.resolve("users.lsm");
+        try (LsmStore store = LsmStore.open(lsm)) {
+            LsmUserRepository repo = new LsmUserRepository(store);
+            repo.add(user(900001, "lsm.one"));
+            repo.update(user(900001, "lsm.renamed"));
+            assertThrows(IllegalArgumentException.class, () -> repo.update(user(900002, "missing")));
+            assertNull(repo.getByUsername("lsm.one"), "The old username is free after a rename");
+            assertEquals(900001, new LsmUserRepository(store).getByUsername("lsm.renamed").id());
+        }
+
+        // Nothing was flushed, the user comes back from the WAL
+        try (LsmStore store = LsmStore.open(lsm)) {
+            LsmUserRepository repo = new LsmUserRepository(store);
+            assertEquals("lsm.renamed", repo.getById(900001).username());
+            assertNull(repo.getById(900002));
+        }
+    }
+
+    @Test
+    void testFlushAndCompaction() throws Exception {
+        Path lsm = dir.resolve("users.lsm");
+        try (LsmStore store = LsmStore.open(lsm, 512, 3)) {
+            LsmUserRepository repo = new LsmUserRepository(store);
+            int before = repo.getAll().size();
+            for (int i = 0; i < 200; i++) {
+                repo.add(user(800000 + i, "bulk" + i));
+            }
+            // Overwrite some users after their first version reached a segment
+            for (int i = 0; i < 200; i += 10) {
+                repo.update(user(800000 + i, "bulk" + i + ".v2"));
+            }
+            store.flush();
+            store.awaitCompaction();
+            assertTrue(store.segmentCount() < 3, "Segments should have been merged");
+            assertEquals(before + 200, repo.getAll().size());
+            assertEquals("bulk10.v2", repo.getById(800010).username());
+            assertEquals("bulk11", repo.getById(800011).username());
+        }
+
+        try (LsmStore store = LsmStore.open(lsm, 512, 3)) {
+            assertEquals("bulk190.v2", new LsmUserRepository(store).getById(800190).username());
+            try (var files = Files.list(lsm)) {
+                assertEquals(store.segmentCount(), files.filter(f -> f.getFileName().toString().startsWith("seg-")).count(),
+                        "Compacted inputs should be gone");
+            }
+        }
+    }
+}